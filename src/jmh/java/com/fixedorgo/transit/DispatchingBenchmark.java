@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Inbox;
+import akka.actor.Props;
+import com.fixedorgo.transit.Dispatching.DispatchingApi.GetRouteData;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Round trip of {@link GetRouteData} through a real {@link ActorSystem}, as done once by every Route actor,
+ * against the direct lookup in the shared {@link RouteTable} used by the bulk bootstrap.
+ */
+@State(Scope.Thread)
+public class DispatchingBenchmark {
+
+    private static final FiniteDuration TIMEOUT = Duration.create(5, SECONDS);
+
+    @Param({"10", "400"})
+    public int routes;
+
+    @Param({"30"})
+    public int stationsPerRoute;
+
+    private ActorSystem system;
+
+    private ActorRef dispatching;
+
+    private Inbox inbox;
+
+    private int[] routeIds;
+
+    private RouteTable routeTable;
+
+    private int route = 0;
+
+    @Setup
+    public void setUp() {
+        final Map<String, List<String>> stations = Maps.newHashMap();
+        final Map<String, String> reverseRoutes = Maps.newHashMap();
+        for (int i = 0; i < routes; i++) {
+            final List<String> forward = Lists.newArrayList();
+            for (int j = 0; j < stationsPerRoute; j++)
+                forward.add("station-" + (i * stationsPerRoute + j));
+            stations.put("route-" + i, forward);
+            stations.put("route-" + i + "-back", Lists.reverse(forward));
+            reverseRoutes.put("route-" + i, "route-" + i + "-back");
+            reverseRoutes.put("route-" + i + "-back", "route-" + i);
+        }
+        system = ActorSystem.create("benchmark");
+        final Symbols symbols = symbolsOf(system);
+        routeTable = RouteTable.create(stations, reverseRoutes, symbols);
+        dispatching = system.actorOf(Props.create(Dispatching.class, routeTable), "dispatching");
+        inbox = Inbox.create(system);
+        routeIds = new int[routes];
+        for (int i = 0; i < routes; i++)
+            routeIds[i] = symbols.id("route-" + i);
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @Benchmark
+    public Object getRouteData() {
+        inbox.send(dispatching, new GetRouteData(routeIds[route = (route + 1) % routes], true));
+        return inbox.receive(TIMEOUT);
+    }
+
+    @Benchmark
+    public Object routeTable() {
+        return routeTable.routeData(routeIds[route = (route + 1) % routes]);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+
+/**
+ * One second step of the whole fleet in the {@link FleetKernel}, the arrived Buses depart at once.
+ */
+@State(Scope.Thread)
+public class FleetKernelBenchmark {
+
+    private static final long TICK = 1000; // milliseconds
+
+    @Param({"1000", "100000"})
+    public int buses;
+
+    private ActorSystem system;
+
+    private ForkJoinPool pool;
+
+    private FleetKernel kernel;
+
+    private long time = 0;
+
+    @Setup
+    public void setUp() {
+        final Scenario scenario = Scenario.generate(20, 400, buses, 1, 42);
+        system = ActorSystem.create("benchmark");
+        pool = new ForkJoinPool();
+        final Symbols symbols = symbolsOf(system);
+        kernel = new FleetKernel(buses, RouteTable.create(scenario.getStations(), scenario.getReverseRoutes(), symbols),
+                scenario.getGeometries(), scenario.getLocations(), symbols, pool);
+        final List<String> busRoutes = scenario.getBusRoutes();
+        for (String route : busRoutes)
+            kernel.depart(kernel.add(symbols.id(route), 0), 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @Benchmark
+    public int step() {
+        final int arrivals = kernel.step(time, time += TICK);
+        for (int i = 0; i < arrivals; i++)
+            kernel.depart(kernel.arrived(i), 1);
+        return arrivals;
+    }
+
+}
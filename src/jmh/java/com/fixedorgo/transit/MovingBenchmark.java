@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import com.fixedorgo.transit.Moving.MovingApi.Load;
+import com.fixedorgo.transit.Moving.MovingApi.MoveTo;
+import com.google.common.collect.Lists;
+import com.javadocmd.simplelatlng.LatLng;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Queue;
+
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.javadocmd.simplelatlng.LatLngTool.distance;
+import static com.javadocmd.simplelatlng.util.LengthUnit.METER;
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * One leg of a Bus between two Stations: planning it over the shared {@link RouteGeometry} against
+ * the former Point by Point movement with two haversine distances per Point, and the whole leg through
+ * a {@link Moving} actor of a virtual-time {@link ActorSystem}, with its arrival event and tracking.
+ */
+@State(Scope.Thread)
+public class MovingBenchmark {
+
+    @Param({"50", "500"})
+    public int pointsPerLeg;
+
+    private final List<Point> points = Lists.newArrayList();
+
+    private RouteGeometry geometry;
+
+    private LatLng destination;
+
+    private ActorSystem system;
+
+    private VirtualClock clock;
+
+    private ActorRef bus;
+
+    @Setup
+    public void setUp() {
+        // a straight street to the north, about 11 meters between the Points
+        for (int i = 0; i <= pointsPerLeg; i++)
+            points.add(new Point(11, 2, new LatLng(53.9 + i * 0.0001, 27.55)));
+        geometry = new RouteGeometry(points);
+        destination = points.get(pointsPerLeg).getLatLng();
+
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString(
+                "transit.tracking.capacity = 10000\n" +
+                "transit.metrics.jmx = off").withFallback(ConfigFactory.load("virtual-time")));
+        clock = (VirtualClock) clockOf(system);
+        bus = system.actorOf(Props.create(Driver.class), "bus");
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @Benchmark
+    public MotionPlan plannedLeg() {
+        final int stop = geometry.stopIndex(0, destination, 10);
+        final long[] times = new long[stop + 1];
+        long time = 0;
+        for (int i = 0; i <= stop; i++)
+            times[i] = time += geometry.duration(i) * 1000;
+        return new MotionPlan(destination, 0, geometry, 0, times, true);
+    }
+
+    @Benchmark
+    public int pointByPointLeg() {
+        final Queue<Point> routePoints = Lists.newLinkedList(points);
+        int reached = 0;
+        while (!routePoints.isEmpty()) {
+            final LatLng location = routePoints.poll().getLatLng();
+            reached++;
+            if (routePoints.isEmpty())
+                break;
+            final double toDestination = distance(destination, location, METER);
+            final double fromNextPoint = distance(destination, routePoints.peek().getLatLng(), METER);
+            if (toDestination < 10 && toDestination < fromNextPoint)
+                break;
+        }
+        return reached;
+    }
+
+    /**
+     * The leg is loaded again every time, since Moving goes on along the next loaded geometry.
+     */
+    @Benchmark
+    public long actorLeg() {
+        bus.tell(new Load(geometry), ActorRef.noSender());
+        bus.tell(new MoveTo(destination), ActorRef.noSender());
+        return clock.run(clock.currentTimeMillis() + DAYS.toMillis(1));
+    }
+
+    /**
+     * Parent of the Moving actor in place of the Bus, ignores its reports.
+     */
+    public static class Driver extends UntypedActor {
+
+        private final ActorRef moving = getContext().actorOf(Props.create(Moving.class), "moving");
+
+        @Override
+        public void onReceive(Object message) throws Exception {
+            if (message instanceof Load || message instanceof MoveTo)
+                moving.tell(message, getSelf());
+        }
+
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import com.fixedorgo.transit.Tracking.TrackingApi.GetTrack;
+import com.fixedorgo.transit.Tracking.TrackingApi.Passed;
+import com.fixedorgo.transit.Tracking.TrackingApi.TrackData;
+import com.google.common.collect.Lists;
+import com.javadocmd.simplelatlng.LatLng;
+import com.typesafe.config.ConfigFactory;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.fixedorgo.transit.ActorRoles.TRACK_MAILBOX;
+import static com.fixedorgo.transit.ActorRoles.sink;
+import static com.fixedorgo.transit.MetricsExtension.metricsOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+
+/**
+ * Overload run of the sink mailboxes: producer threads flood a few Tracking actors with Passed legs far
+ * faster than the sink dispatcher drains them; the legs sent, delivered and dropped, the mailbox depth and
+ * the used heap are reported every second. With the bounded track mailbox the heap stays flat; rerun with an
+ * unbounded one to compare.
+ * <p>
+ * Every leg passes 10 Points of 10 m in 10 s, so each kept sample should have travelled a tenth of a meter
+ * per millisecond. The samples off that distance are counted at the end: a dropped leg must not shift the
+ * distance of the following ones.
+ * <pre>
+ *     gradle overload -PoverloadArgs="producers trackers seconds"
+ *     java -Dtransit.mailboxes.track.capacity=0 ... com.fixedorgo.transit.OverloadRunner 4 8 20
+ * </pre>
+ */
+public class OverloadRunner {
+
+    private static final int LEG_POINTS = 10;
+
+    private static final int POINT_DISTANCE = 10; // meters
+
+    private static final long POINT_TIME = 1000; // milliseconds
+
+    public static void main(String[] args) throws Exception {
+        final int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int trackers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        if (producers < 1 || trackers < producers)
+            throw new IllegalArgumentException(String.format("Every one of [%s] producers needs its own Tracking " +
+                    "actors, not [%s]", producers, trackers));
+
+        final List<Point> points = Lists.newArrayList();
+        for (int i = 0; i < LEG_POINTS; i++)
+            points.add(new Point(POINT_DISTANCE, 1, new LatLng(53.9, 27.56 + i * 0.0001)));
+        final RouteGeometry geometry = new RouteGeometry(points);
+
+        final ActorSystem system = ActorSystem.create("Overload", ConfigFactory.parseString(
+                "transit.tracking.capacity = 1000\n" +
+                "transit.metrics.jmx = off").withFallback(ConfigFactory.load()));
+        try {
+            final Metrics metrics = metricsOf(system);
+            final Histogram delivered = Metrics.histogram(metrics.processing("Tracking"), Passed.class);
+            final Histogram depth = metrics.mailbox("Tracking");
+            final AtomicLong dropped = metrics.dropped(TRACK_MAILBOX);
+
+            final ActorRef[] tracking = new ActorRef[trackers];
+            for (int i = 0; i < trackers; i++)
+                tracking[i] = system.actorOf(sink(Props.create(Tracking.class, symbolsOf(system).id("bus-" + i)),
+                        TRACK_MAILBOX), "tracking-" + i);
+
+            final AtomicLong sent = new AtomicLong();
+            final Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                final int offset = p;
+                threads[p] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // a Tracking actor takes the legs of a single producer, in order of time
+                        final int own = (trackers - offset + producers - 1) / producers;
+                        final long[] legs = new long[own];
+                        long count = 0;
+                        while (!Thread.currentThread().isInterrupted()) {
+                            final int i = (int) (count % own);
+                            final long startTime = legs[i]++ * LEG_POINTS * POINT_TIME;
+                            final long[] times = new long[LEG_POINTS];
+                            for (int j = 0; j < LEG_POINTS; j++)
+                                times[j] = startTime + (j + 1) * POINT_TIME;
+                            final MotionPlan plan = new MotionPlan(geometry.latLng(0), startTime, geometry, 0,
+                                    times, true);
+                            tracking[offset + i * producers].tell(new Passed(plan, startTime * POINT_DISTANCE /
+                                    POINT_TIME), ActorRef.noSender());
+                            if (++count % 1024 == 0)
+                                sent.addAndGet(1024);
+                        }
+                    }
+                }, "producer-" + p);
+                threads[p].setDaemon(true);
+                threads[p].start();
+            }
+
+            final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long maxHeap = 0;
+            for (int second = 1; second <= seconds; second++) {
+                TimeUnit.SECONDS.sleep(1);
+                final long heap = memory.getHeapMemoryUsage().getUsed();
+                maxHeap = Math.max(maxHeap, heap);
+                System.out.printf("%3d s: sent %,d, delivered %,d, dropped %,d, max mailbox depth %,d, heap %.1f MB%n",
+                        second, sent.get(), delivered.getCount(), dropped.get(), depth.getMax(),
+                        heap / (1024.0 * 1024.0));
+            }
+            for (Thread thread : threads) {
+                thread.interrupt();
+                thread.join();
+            }
+
+            long samples = 0;
+            long misplaced = 0;
+            for (ActorRef actor : tracking) {
+                final TrackData track = (TrackData) Await.result(Patterns.ask(actor,
+                        new GetTrack(0, Long.MAX_VALUE), 60000), Duration.create(60, TimeUnit.SECONDS));
+                for (int i = 0; i < track.times.length; i++)
+                    if (track.distances[i] != track.times[i] * POINT_DISTANCE / POINT_TIME)
+                        misplaced++;
+                samples += track.times.length;
+            }
+
+            System.out.printf("Track mailbox capacity: %d%n",
+                    system.settings().config().getInt(TRACK_MAILBOX + ".capacity"));
+            System.out.printf("Delivered: %,d of %,d, dropped %,d%n", delivered.getCount(), sent.get(), dropped.get());
+            System.out.printf("Samples off the travelled distance: %,d of %,d%n", misplaced, samples);
+            System.out.printf("Max heap: %.1f MB%n", maxHeap / (1024.0 * 1024.0));
+        } finally {
+            system.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.BitSet;
+
+/**
+ * Creation of the Passengers generated at Stations: a new object against a slot of the {@link PassengerPool},
+ * released at once as after a short ride.
+ */
+@State(Scope.Thread)
+public class PassengerBenchmark {
+
+    private final PassengerPool pool = new PassengerPool();
+
+    private static final BitSet ROUTES = new BitSet();
+
+    static {
+        ROUTES.set(1);
+        ROUTES.set(2);
+    }
+
+    @Benchmark
+    public Passenger newPassenger() {
+        return new Passenger(1, 2, ROUTES, 0);
+    }
+
+    @Benchmark
+    public int pooledPassenger() {
+        final int passenger = pool.allocate(1, 2, ROUTES, 0);
+        pool.release(passenger);
+        return passenger;
+    }
+
+}
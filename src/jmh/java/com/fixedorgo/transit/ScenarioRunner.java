@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.typesafe.config.ConfigFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+
+/**
+ * Headless throughput run of a synthetic {@link Scenario}: reports simulated seconds per wall-clock second,
+ * events per second, peak heap and GC activity.
+ * <pre>
+ *     gradle scenario -PscenarioArgs="routes stations buses arrivalRate hours seed"
+ * </pre>
+ */
+public class ScenarioRunner {
+
+    public static void main(String[] args) {
+        final int routes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int stations = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        final int buses = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        final double arrivalRate = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+        final int hours = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        final long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+
+        final Scenario scenario = Scenario.generate(routes, stations, buses, arrivalRate, seed);
+        final Simulation simulation = new Simulation(scenario, ConfigFactory.parseString("transit.random.seed = " + seed)
+                .withFallback(ConfigFactory.load("virtual-time")));
+        try {
+            final List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+            for (MemoryPoolMXBean pool : pools)
+                pool.resetPeakUsage();
+            final long gcCount = gcCount();
+            final long gcTime = gcTime();
+
+            // report progress every simulated hour
+            final long start = System.nanoTime();
+            for (int hour = 1; hour <= hours; hour++) {
+                simulation.run(HOURS.toMillis(hour));
+                System.out.printf("%d h simulated, %d events, %.1f s%n", hour, simulation.processedEvents(),
+                        (System.nanoTime() - start) / 1e9);
+            }
+            final double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : pools)
+                if (pool.getType() == MemoryType.HEAP)
+                    peakHeap += pool.getPeakUsage().getUsed();
+
+            System.out.printf("Scenario: %d routes, %d stations, %d buses, %.2f passengers/min, seed %d%n",
+                    routes, stations, buses, arrivalRate, seed);
+            System.out.printf("Simulated seconds per wall second: %.1f%n",
+                    simulation.currentTimeMillis() / 1000.0 / wallSeconds);
+            System.out.printf("Events per second: %.0f%n", simulation.processedEvents() / wallSeconds);
+            System.out.printf("Peak heap: %.1f MB%n", peakHeap / (1024.0 * 1024.0));
+            System.out.printf("GC: %d collections, %d ms%n", gcCount() - gcCount, gcTime() - gcTime);
+        } finally {
+            simulation.shutdown();
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(gc.getCollectionCount(), 0);
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(gc.getCollectionTime(), 0);
+        return time;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.Moving.MovingApi.Load;
+import com.fixedorgo.transit.Station.StationApi.Stopped;
+import com.fixedorgo.transit.Tracking.TrackingApi.Passed;
+import com.google.common.collect.Lists;
+import com.javadocmd.simplelatlng.LatLng;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Round trip of the simulation messages: {@link TransitSerializer} against Java serialization, the default
+ * Akka serializer of them. The size of the serialized message is printed at the setup. The Passengers of the
+ * deserialized message are released at once, so the pool doesn't grow.
+ */
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"load", "passed", "stopped"})
+    public String message;
+
+    private final Symbols symbols = new Symbols();
+
+    private final PassengerPool passengers = new PassengerPool();
+
+    private final TransitSerializer transitSerializer = new TransitSerializer(symbols, passengers);
+
+    private Object object;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Random random = new Random(42);
+        final List<Point> points = Lists.newArrayList();
+        double latitude = 53.9;
+        double longitude = 27.56;
+        for (int i = 0; i < 1000; i++) {
+            latitude += (random.nextInt(200) - 100) * 1e-6;
+            longitude += (random.nextInt(200) - 100) * 1e-6;
+            points.add(new Point(10 + random.nextInt(20), 1000 + random.nextInt(2000), new LatLng(latitude, longitude)));
+        }
+        final RouteGeometry geometry = new RouteGeometry(points);
+        switch (message) {
+            case "load":
+                object = new Load(geometry);
+                break;
+            case "passed":
+                final long[] times = new long[50];
+                for (int i = 0; i < times.length; i++)
+                    times[i] = 60000 + geometry.totalDuration(100 + i);
+                object = new Passed(new MotionPlan(geometry.latLng(99), 60000, geometry, 100, times, true), 25000);
+                break;
+            case "stopped":
+                final BitSet routes = new BitSet();
+                routes.set(symbols.id("route-34"));
+                routes.set(symbols.id("route-35"));
+                final int[] alighting = new int[5];
+                for (int i = 0; i < alighting.length; i++)
+                    alighting[i] = passengers.allocate(symbols.id("station-" + i), symbols.id("station-9"),
+                            routes, 3000000 + i * 60000);
+                object = new Stopped(symbols.id("bus-12"), symbols.id("route-34"), alighting, 3600000, 40);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown message [%s]", message));
+        }
+        System.out.printf("%n%s: %d bytes, Java serialization %d bytes%n", message,
+                transitSerializer.toBinary(object).length, javaSerialize(object).length);
+    }
+
+    @Benchmark
+    public Object transitRoundTrip() {
+        final Object copy = transitSerializer.fromBinary(transitSerializer.toBinary(object));
+        if (copy instanceof Stopped)
+            for (int passenger : ((Stopped) copy).alighting)
+                passengers.release(passenger);
+        return copy;
+    }
+
+    @Benchmark
+    public Object javaRoundTrip() throws IOException, ClassNotFoundException {
+        return javaDeserialize(javaSerialize(object));
+    }
+
+    private static byte[] javaSerialize(Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+}
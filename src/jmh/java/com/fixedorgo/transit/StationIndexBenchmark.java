@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.google.common.collect.Lists;
+import com.javadocmd.simplelatlng.LatLng;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.javadocmd.simplelatlng.LatLngTool.distance;
+import static com.javadocmd.simplelatlng.util.LengthUnit.METER;
+
+/**
+ * Nearest Station to a Bus location: the grid {@link StationIndex} against a haversine scan of every Station.
+ */
+@State(Scope.Thread)
+public class StationIndexBenchmark {
+
+    private static final int LOCATIONS = 1024;
+
+    @Param({"100", "5000"})
+    public int stations;
+
+    private final List<StationData> stationData = Lists.newArrayList();
+
+    private final LatLng[] locations = new LatLng[LOCATIONS];
+
+    private StationIndex index;
+
+    private int location = 0;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        // a city of about 20 by 20 kilometers
+        for (int i = 0; i < stations; i++)
+            stationData.add(new StationData("station-" + i, "Station " + i,
+                    new LatLng(53.8 + random.nextDouble() * 0.18, 27.4 + random.nextDouble() * 0.3)));
+        for (int i = 0; i < LOCATIONS; i++)
+            locations[i] = new LatLng(53.8 + random.nextDouble() * 0.18, 27.4 + random.nextDouble() * 0.3);
+        index = new StationIndex(stationData);
+    }
+
+    @Benchmark
+    public StationData indexedNearest() {
+        return index.nearest(locations[location = (location + 1) % LOCATIONS]);
+    }
+
+    @Benchmark
+    public StationData scannedNearest() {
+        final LatLng point = locations[location = (location + 1) % LOCATIONS];
+        StationData nearest = null;
+        double best = Double.POSITIVE_INFINITY;
+        for (StationData station : stationData) {
+            final double distance = distance(point, station.location, METER);
+            if (distance < best) {
+                best = distance;
+                nearest = station;
+            }
+        }
+        return nearest;
+    }
+
+    @Benchmark
+    public List<StationData> indexedWithin() {
+        return index.within(locations[location = (location + 1) % LOCATIONS], 500);
+    }
+
+}
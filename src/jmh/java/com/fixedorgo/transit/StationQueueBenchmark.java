@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import com.fixedorgo.transit.Station.StationApi.Arrived;
+import com.fixedorgo.transit.Station.StationApi.BoardingGroup;
+import com.fixedorgo.transit.Station.StationApi.Stopped;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.javadocmd.simplelatlng.LatLng;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.PassengerPoolExtension.passengersOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+import static com.google.common.collect.Iterables.tryFind;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Boarding lookup at a Station with a large queue: {@link StationQueue} against the former linear scan
+ * of a LinkedList. Every boarded Passenger returns to the end of the queue to keep its size.
+ * <p>
+ * The miss benchmarks ask for a Route nobody waits for, which is how every boarding at a Station ends.
+ * <p>
+ * The actor benchmark stops a Bus at a {@link Station} actor of a virtual-time {@link ActorSystem} every
+ * simulated minute: the Passengers arrived meanwhile are sampled, as many board, and the boarding group comes
+ * back by the clock. The queue starts with about {@code queueSize} Passengers.
+ */
+@State(Scope.Thread)
+public class StationQueueBenchmark {
+
+    private static final int ROUTES = 20;
+
+    // Passengers arriving at the Station actor per minute, and boarding each Bus
+    private static final int ARRIVAL_RATE = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int queueSize;
+
+    private final PassengerPool pool = new PassengerPool();
+
+    private final StationQueue stationQueue = new StationQueue(pool);
+
+    private final List<Passenger> linkedList = Lists.newLinkedList();
+
+    private int route = 0;
+
+    private ActorSystem system;
+
+    private VirtualClock clock;
+
+    private ActorRef station;
+
+    private ActorRef bus;
+
+    private int busId;
+
+    private int[] routeIds;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < queueSize; i++) {
+            // every Passenger is suitable for two Routes
+            final BitSet routes = new BitSet();
+            routes.set(routeId(i % ROUTES));
+            routes.set(routeId((i + 1) % ROUTES));
+            stationQueue.add(pool.allocate(Symbols.NONE, Symbols.NONE, routes, 0));
+            linkedList.add(new Passenger(Symbols.NONE, Symbols.NONE, routes));
+        }
+
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString(
+                "transit.station.arrivals = lazy\n" +
+                "transit.metrics.jmx = off").withFallback(ConfigFactory.load("virtual-time")));
+        clock = (VirtualClock) clockOf(system);
+        station = system.actorOf(Props.create(Station.class, "station", "Station", new LatLng(53.9, 27.55),
+                (double) ARRIVAL_RATE), "station");
+        bus = system.actorOf(Props.create(Driver.class), "bus");
+        final Symbols symbols = symbolsOf(system);
+        busId = symbols.id("bus");
+        routeIds = new int[ROUTES];
+        for (int i = 0; i < ROUTES; i++) {
+            routeIds[i] = symbols.id("route-" + i);
+            station.tell(new Arrived(busId, routeIds[i]), bus); // the Passengers wait for any served Route
+        }
+        // the first Bus samples the Passengers of the whole period at once
+        clock.run(clock.currentTimeMillis() + MINUTES.toMillis(queueSize / ARRIVAL_RATE));
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @Benchmark
+    public int indexedBoarding() {
+        final int passenger = stationQueue.poll(nextRoute());
+        stationQueue.add(passenger);
+        return passenger;
+    }
+
+    @Benchmark
+    public Passenger linearBoarding() {
+        final int routeId = nextRoute();
+        final Passenger passenger = tryFind(linkedList, new Predicate<Passenger>() {
+            @Override
+            public boolean apply(Passenger passenger) {
+                return passenger.isSuitable(routeId);
+            }
+        }).get();
+        linkedList.remove(passenger);
+        linkedList.add(passenger);
+        return passenger;
+    }
+
+    @Benchmark
+    public int indexedMiss() {
+        return stationQueue.poll(routeId(ROUTES));
+    }
+
+    @Benchmark
+    public Optional<Passenger> linearMiss() {
+        final int routeId = routeId(ROUTES);
+        return tryFind(linkedList, new Predicate<Passenger>() {
+            @Override
+            public boolean apply(Passenger passenger) {
+                return passenger.isSuitable(routeId);
+            }
+        });
+    }
+
+    @Benchmark
+    public long actorStop() {
+        station.tell(new Stopped(busId, routeIds[route = (route + 7) % ROUTES], new int[0],
+                Simulation.BOARDING_TIME, ARRIVAL_RATE), bus);
+        return clock.run(clock.currentTimeMillis() + MINUTES.toMillis(1));
+    }
+
+    private int nextRoute() {
+        return routeId(route = (route + 7) % ROUTES);
+    }
+
+    // Route symbols, zero is reserved for the empty id
+    private static int routeId(int i) {
+        return i + 1;
+    }
+
+    /**
+     * Bus which leaves the Station with the boarded Passengers, their slots are released at once.
+     */
+    public static class Driver extends UntypedActor {
+
+        private final PassengerPool passengers = passengersOf(getContext().system());
+
+        @Override
+        public void onReceive(Object message) throws Exception {
+            if (message instanceof BoardingGroup)
+                for (int passenger : ((BoardingGroup) message).passengers)
+                    passengers.release(passenger);
+        }
+
+    }
+
+}
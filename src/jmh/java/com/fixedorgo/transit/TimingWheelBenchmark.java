@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import scala.concurrent.duration.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Scheduling of a delayed message with many timers pending: {@link TimingWheel} against the Akka scheduler.
+ */
+@State(Scope.Thread)
+public class TimingWheelBenchmark {
+
+    private static final long DELAY = 600000; // milliseconds, far enough to stay pending during the run
+
+    @Param({"1000", "200000"})
+    public int pendingTimers;
+
+    private ActorSystem system;
+
+    private TimingWheel wheel;
+
+    private long delay = 0;
+
+    @Setup
+    public void setUp() {
+        system = ActorSystem.create("benchmark");
+        wheel = new TimingWheel(1, MILLISECONDS, "benchmark-timing-wheel");
+        for (int i = 0; i < pendingTimers; i++) {
+            wheel.schedule(DELAY + i, MILLISECONDS, system.deadLetters(), i, ActorRef.noSender());
+            system.scheduler().scheduleOnce(Duration.create(DELAY + i, MILLISECONDS), system.deadLetters(), i,
+                    system.dispatcher(), ActorRef.noSender());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.stop();
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @Benchmark
+    public void timingWheel() {
+        wheel.schedule(DELAY + (delay = (delay + 7) % DELAY), MILLISECONDS, system.deadLetters(), delay,
+                ActorRef.noSender());
+    }
+
+    @Benchmark
+    public Object akkaScheduler() {
+        return system.scheduler().scheduleOnce(Duration.create(DELAY + (delay = (delay + 7) % DELAY), MILLISECONDS),
+                system.deadLetters(), delay, system.dispatcher(), ActorRef.noSender());
+    }
+
+}
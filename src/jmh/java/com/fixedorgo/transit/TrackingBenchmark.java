@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.fixedorgo.transit.Tracking.TrackingApi.Track;
+import com.google.common.collect.Maps;
+import com.javadocmd.simplelatlng.LatLng;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+
+import static com.fixedorgo.transit.ActorRoles.TRACK_MAILBOX;
+import static com.fixedorgo.transit.ActorRoles.sink;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+
+/**
+ * Appending of track samples: {@link TrackStore} against the former pair of LinkedHashMaps, and a
+ * {@link Track} message to a {@link Tracking} actor of a virtual-time {@link ActorSystem} with its ring
+ * of the same capacity.
+ */
+@State(Scope.Thread)
+public class TrackingBenchmark {
+
+    private TrackStore trackStore;
+
+    private Map<Long, LatLng> movingTrack;
+
+    private Map<Long, Double> totalPath;
+
+    private long time;
+
+    private double distance;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        trackStore = new TrackStore();
+        movingTrack = Maps.newLinkedHashMap();
+        totalPath = Maps.newLinkedHashMap();
+    }
+
+    @Benchmark
+    public void actorTrack(ActorState actor) {
+        actor.tracking.tell(actor.track, ActorRef.noSender());
+    }
+
+    @Benchmark
+    public void columnarTrack() {
+        trackStore.append(time++, 53.9, 27.55, distance += 11);
+    }
+
+    @Benchmark
+    public void mapTrack() {
+        movingTrack.put(time, new LatLng(53.9, 27.55));
+        totalPath.put(time++, distance += 11);
+    }
+
+    @Benchmark
+    public void ringTrack(RingState ring) {
+        ring.trackStore.append(time++, 53.9, 27.55, distance += 11);
+    }
+
+    @State(Scope.Thread)
+    public static class RingState {
+        final TrackStore trackStore = new TrackStore(10000);
+    }
+
+    @State(Scope.Thread)
+    public static class ActorState {
+
+        final Track track = new Track(new Point(11, 2, new LatLng(53.9, 27.55)));
+
+        ActorSystem system;
+
+        ActorRef tracking;
+
+        @Setup
+        public void setUp() {
+            system = ActorSystem.create("benchmark", ConfigFactory.parseString(
+                    "transit.tracking.capacity = 10000\n" +
+                    "transit.metrics.jmx = off").withFallback(ConfigFactory.load("virtual-time")));
+            tracking = system.actorOf(sink(Props.create(Tracking.class,
+                    symbolsOf(system).id("bus")), TRACK_MAILBOX), "tracking");
+        }
+
+        @TearDown
+        public void tearDown() {
+            system.shutdown();
+            system.awaitTermination();
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Props;
+
+/**
+ * Execution settings of the actors by their role in the simulation:
+ * <ul>
+ * <li>simulation - Station, Moving, Shuttle, Fleet, Dispatching: the events themselves run on their own
+ * fork-join pool and never wait behind the bookkeeping. The {@link TimeScaleController} runs there too,
+ * to measure the backlog of the events;</li>
+ * <li>sink - Tracking and DepartureData: write-heavy bookkeeping on a small pool which drains the mailboxes
+ * in large batches.</li>
+ * </ul>
+ * The dispatchers and mailboxes are configured under {@code transit.dispatchers} and {@code transit.mailboxes};
+ * in virtual time all of them run on the calling thread.
+ */
+public final class ActorRoles {
+
+    public static final String SIMULATION_DISPATCHER = "transit.dispatchers.simulation";
+
+    public static final String SINK_DISPATCHER = "transit.dispatchers.sink";
+
+    /**
+     * Track samples are lossy: the bounded mailbox drops them when the Tracking can't keep up, so a slow sink
+     * can't fill the heap.
+     */
+    public static final String TRACK_MAILBOX = "transit.mailboxes.track";
+
+    /**
+     * Departures are not: the mailbox is unbounded and counted into the backlog, so the
+     * {@link TimeScaleController} slows the simulation down when the DepartureData falls behind.
+     */
+    public static final String DEPARTURE_MAILBOX = "transit.mailboxes.departure";
+
+    private ActorRoles() {
+    }
+
+    public static Props simulation(Props props) {
+        return props.withDispatcher(SIMULATION_DISPATCHER);
+    }
+
+    public static Props sink(Props props, String mailbox) {
+        return props.withDispatcher(SINK_DISPATCHER).withMailbox(mailbox);
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.Extension;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of simulation time for the actors of one {@link akka.actor.ActorSystem}.
+ * All delayed messages should be sent through {@link #scheduleOnce} instead of the Akka scheduler,
+ * so the same actors can run either in real time or in virtual time.
+ *
+ * @see ClockExtension
+ */
+public interface Clock extends Extension {
+
+    /**
+     * @return simulation time in milliseconds since the start of the simulation
+     */
+    long currentTimeMillis();
+
+    /**
+     * Delivers the message to the receiver after the given amount of simulation time.
+     */
+    void scheduleOnce(long delay, TimeUnit unit, ActorRef receiver, Object message, ActorRef sender);
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+
+/**
+ * Provides the {@link Clock} of an {@link ActorSystem} according to the {@code transit.clock.mode} setting:
+ * {@code real-time} (default) or {@code virtual}.
+ */
+public class ClockExtension extends AbstractExtensionId<Clock> implements ExtensionIdProvider {
+
+    public static final ClockExtension ClockProvider = new ClockExtension();
+
+    public static Clock clockOf(ActorSystem system) {
+        return ClockProvider.get(system);
+    }
+
+    @Override
+    public ClockExtension lookup() {
+        return ClockProvider;
+    }
+
+    @Override
+    public Clock createExtension(ExtendedActorSystem system) {
+        final String mode = system.settings().config().getString("transit.clock.mode");
+        switch (mode) {
+            case "real-time":
+                return new RealTimeClock(system);
+            case "virtual":
+                return new VirtualClock();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown clock mode [%s]", mode));
+        }
+    }
+
+}
@@ -15,37 +15,45 @@
  */
 package com.fixedorgo.transit;
 
-import akka.actor.UntypedActor;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
 import com.fixedorgo.transit.DepartureData.DepartureApi.DepartureWas;
 import com.fixedorgo.transit.DepartureData.DepartureApi.GetDepartureFor;
+import com.fixedorgo.transit.DepartureData.DepartureApi.GetHeadways;
+import com.fixedorgo.transit.DepartureData.DepartureApi.Headways;
 import com.fixedorgo.transit.DepartureData.DepartureApi.SetDepartureFor;
-import com.google.common.collect.Maps;
 
-import java.util.Map;
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.JournalExtension.journalOf;
 
-public class DepartureData extends UntypedActor {
+public class DepartureData extends MeteredActor {
 
-    private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+    private final DepartureHistory departures = new DepartureHistory();
 
-    private final Map<String, Long> departureTime = Maps.newHashMap();
+    private final Clock clock = clockOf(getContext().system());
 
-    @Override
-    public void onReceive(Object message) throws Exception {
+    private final Journal journal = journalOf(getContext().system());
 
-        log.debug("Received message [{}]", message);
+    @Override
+    protected void onMessage(Object message) throws Exception {
 
         if (message instanceof SetDepartureFor) {
 
             final SetDepartureFor departureFor = (SetDepartureFor) message;
-            departureTime.put(departureFor.stationId, System.currentTimeMillis());
+            final long time = clock.currentTimeMillis();
+            departures.add(departureFor.stationId, departureFor.routeId, time);
+            journal.departure(time, departureFor.stationId, departureFor.routeId);
 
         } else if (message instanceof GetDepartureFor) {
 
             final GetDepartureFor departureFor = (GetDepartureFor) message;
-            final Long time = departureTime.get(departureFor.stationId);
-            getSender().tell(new DepartureWas(departureFor.stationId, (time != null ? time : 0)), getSelf());
+            final long time = departures.lastDeparture(departureFor.stationId);
+            getSender().tell(new DepartureWas(departureFor.stationId, time), getSelf());
+
+        } else if (message instanceof GetHeadways) {
+
+            final GetHeadways get = (GetHeadways) message;
+            final DepartureSeries series = departures.series(get.stationId, get.routeId);
+            getSender().tell(new Headways(get.stationId, get.routeId, series.headways(get.from, get.to),
+                    series.percentiles(get.from, get.to, get.percentiles)), getSelf());
 
         } else {
             unhandled(message);
@@ -55,32 +63,78 @@ public class DepartureData extends UntypedActor {
 
     public static class DepartureApi {
 
+        /**
+         * Departure of a Bus of the Route from the Station, both given by their {@link Symbols}.
+         */
         public static class SetDepartureFor {
-            public final String stationId;
+            public final int stationId;
+            public final int routeId;
 
-            public SetDepartureFor(String stationId) {
+            public SetDepartureFor(int stationId) {
+                this(stationId, Symbols.NONE);
+            }
+
+            public SetDepartureFor(int stationId, int routeId) {
                 this.stationId = stationId;
+                this.routeId = routeId;
             }
         }
 
         public static class GetDepartureFor {
-            public final String stationId;
+            public final int stationId;
 
-            public GetDepartureFor(String stationId) {
+            public GetDepartureFor(int stationId) {
                 this.stationId = stationId;
             }
         }
 
         public static class DepartureWas {
-            public final String stationId;
+            public final int stationId;
             public final long departureTime;
 
-            public DepartureWas(String stationId, long departureTime) {
+            public DepartureWas(int stationId, long departureTime) {
                 this.stationId = stationId;
                 this.departureTime = departureTime;
             }
         }
 
+        /**
+         * Request for the headways of the Route at the Station within {@code [from, to)} of simulation time,
+         * with the given percentiles (0 - 100) of them. Illegal percentiles are rejected here, at the sender.
+         */
+        public static class GetHeadways {
+            public final int stationId;
+            public final int routeId;
+            public final long from;
+            public final long to;
+            public final double[] percentiles;
+
+            public GetHeadways(int stationId, int routeId, long from, long to, double... percentiles) {
+                for (double percentile : percentiles)
+                    if (!(percentile >= 0 && percentile <= 100))
+                        throw new IllegalArgumentException(String.format("Illegal percentile [%s]", percentile));
+                this.stationId = stationId;
+                this.routeId = routeId;
+                this.from = from;
+                this.to = to;
+                this.percentiles = percentiles;
+            }
+        }
+
+        public static class Headways {
+            public final int stationId;
+            public final int routeId;
+            public final long[] headways;
+            public final long[] percentiles;
+
+            public Headways(int stationId, int routeId, long[] headways, long[] percentiles) {
+                this.stationId = stationId;
+                this.routeId = routeId;
+                this.headways = headways;
+                this.percentiles = percentiles;
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import java.util.Arrays;
+
+/**
+ * All departures by Station and Route symbols, with the last departure from every Station.
+ * The series are kept in arrays indexed by the symbols, so no lookup hashes anything.
+ */
+public class DepartureHistory {
+
+    private static final DepartureSeries[] NO_SERIES = new DepartureSeries[0];
+
+    // series by Station and then by Route
+    private DepartureSeries[][] departures = new DepartureSeries[16][];
+
+    private long[] lastDepartures = new long[16];
+
+    public void add(int stationId, int routeId, long time) {
+        if (stationId >= departures.length) {
+            final int length = Math.max(departures.length * 2, stationId + 1);
+            departures = Arrays.copyOf(departures, length);
+            lastDepartures = Arrays.copyOf(lastDepartures, length);
+        }
+        DepartureSeries[] routes = departures[stationId];
+        if (routes == null)
+            routes = NO_SERIES;
+        if (routeId >= routes.length)
+            departures[stationId] = routes = Arrays.copyOf(routes, Math.max(routes.length * 2, routeId + 1));
+        DepartureSeries series = routes[routeId];
+        if (series == null)
+            routes[routeId] = series = new DepartureSeries();
+        series.add(time);
+        lastDepartures[stationId] = Math.max(lastDepartures[stationId], time);
+    }
+
+    /**
+     * @return departures of the Route from the Station, empty if there were no departures
+     */
+    public DepartureSeries series(int stationId, int routeId) {
+        final DepartureSeries[] routes = stationId < departures.length ? departures[stationId] : null;
+        final DepartureSeries series = routes != null && routeId < routes.length ? routes[routeId] : null;
+        return series != null ? series : new DepartureSeries();
+    }
+
+    /**
+     * @return time of the last departure of any Route from the Station or zero if there were no departures
+     */
+    public long lastDeparture(int stationId) {
+        return stationId < lastDepartures.length ? lastDepartures[stationId] : 0;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import java.util.Arrays;
+
+/**
+ * Departure times of one Route from one Station, kept sorted in a primitive array.
+ * Queries by a period of time find its bounds by binary search and touch the departures of the period only.
+ * <p>
+ * The headways are also kept sorted by blocks of 64 and of 4096 departures, built once a block is complete,
+ * so a percentile counts the headways of the whole blocks of the period by binary search instead of sorting them,
+ * and scans at most a block of the smaller level at either end of the period.
+ */
+public class DepartureSeries {
+
+    // sizes of the blocks by level, from the smallest
+    private static final int[] BLOCK_SHIFTS = {6, 12};
+
+    private long[] times = new long[16];
+
+    private int size = 0;
+
+    // block b of a level holds the sorted headways between departures b * size ... (b + 1) * size
+    private final long[][][] blocks = new long[BLOCK_SHIFTS.length][4][];
+
+    // number of the blocks of a level which are built and not changed since
+    private final int[] sealed = new int[BLOCK_SHIFTS.length];
+
+    public void add(long time) {
+        if (size == times.length)
+            times = Arrays.copyOf(times, size * 2);
+        int position = size;
+        // departures come in order of time, except for the ones reported at the same moment
+        while (position > 0 && times[position - 1] > time)
+            position--;
+        System.arraycopy(times, position, times, position + 1, size - position);
+        times[position] = time;
+        size++;
+        // the headways before and after the new departure have changed
+        for (int level = 0; level < BLOCK_SHIFTS.length; level++)
+            sealed[level] = Math.min(sealed[level], Math.max(position - 1, 0) >> BLOCK_SHIFTS[level]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long time(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException(String.format("Departure [%s] of [%s]", i, size));
+        return times[i];
+    }
+
+    /**
+     * @return time of the last departure or zero if there were no departures
+     */
+    public long last() {
+        return size > 0 ? times[size - 1] : 0;
+    }
+
+    /**
+     * Headways of the departures within {@code [from, to)}: time since the previous departure,
+     * which may be before the period.
+     */
+    public long[] headways(long from, long to) {
+        final int first = Math.max(indexOf(from), 1);
+        final int end = indexOf(to);
+        if (end <= first)
+            return new long[0];
+        final long[] headways = new long[end - first];
+        for (int i = first; i < end; i++)
+            headways[i - first] = times[i] - times[i - 1];
+        return headways;
+    }
+
+    /**
+     * @param percentiles requested percentiles from 0 to 100
+     * @return headways at the requested percentiles within {@code [from, to)}, zeros if there are no headways
+     */
+    public long[] percentiles(long from, long to, double... percentiles) {
+        for (double percentile : percentiles)
+            if (!(percentile >= 0 && percentile <= 100))
+                throw new IllegalArgumentException(String.format("Illegal percentile [%s]", percentile));
+        final long[] result = new long[percentiles.length];
+        // headway j is the time between departures j and j + 1
+        final int first = Math.max(indexOf(from), 1) - 1;
+        final int end = indexOf(to) - 1;
+        if (end <= first)
+            return result;
+        seal();
+        for (int i = 0; i < percentiles.length; i++) {
+            final int rank = Math.max((int) Math.ceil(percentiles[i] / 100 * (end - first)), 1);
+            // the smallest headway with at least rank headways not longer than it
+            long low = 0;
+            long high = times[end] - times[first];
+            while (low < high) {
+                final long middle = (low + high) >>> 1;
+                if (countAtMost(middle, first, end, BLOCK_SHIFTS.length - 1) >= rank)
+                    high = middle;
+                else
+                    low = middle + 1;
+            }
+            result[i] = low;
+        }
+        return result;
+    }
+
+    /**
+     * @return number of the headways within {@code [first, end)} not longer than the value, counted by the blocks
+     * of the level and the levels below
+     */
+    private int countAtMost(long value, int first, int end, int level) {
+        if (level < 0) {
+            int count = 0;
+            for (int j = first; j < end; j++)
+                if (times[j + 1] - times[j] <= value)
+                    count++;
+            return count;
+        }
+        final int shift = BLOCK_SHIFTS[level];
+        final int firstBlock = (first + (1 << shift) - 1) >> shift;
+        final int endBlock = end >> shift;
+        if (firstBlock >= endBlock)
+            return countAtMost(value, first, end, level - 1);
+        int count = countAtMost(value, first, firstBlock << shift, level - 1);
+        for (int block = firstBlock; block < endBlock; block++)
+            count += upperBound(blocks[level][block], value);
+        return count + countAtMost(value, endBlock << shift, end, level - 1);
+    }
+
+    /**
+     * Builds the sorted headways of the complete blocks.
+     */
+    private void seal() {
+        for (int level = 0; level < BLOCK_SHIFTS.length; level++) {
+            final int shift = BLOCK_SHIFTS[level];
+            while ((sealed[level] + 1) << shift < size) {
+                final int index = sealed[level];
+                if (index == blocks[level].length)
+                    blocks[level] = Arrays.copyOf(blocks[level], index * 2);
+                final int first = index << shift;
+                final long[] block = blocks[level][index] == null ? new long[1 << shift] : blocks[level][index];
+                for (int j = 0; j < block.length; j++)
+                    block[j] = times[first + j + 1] - times[first + j];
+                Arrays.sort(block);
+                blocks[level][sealed[level]++] = block;
+            }
+        }
+    }
+
+    /**
+     * @return number of the values not greater than the given one
+     */
+    private static int upperBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sorted[middle] <= value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first departure not earlier than the time
+     */
+    private int indexOf(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (times[middle] < time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+}
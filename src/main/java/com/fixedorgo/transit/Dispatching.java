@@ -15,64 +15,76 @@
  */
 package com.fixedorgo.transit;
 
-import akka.actor.UntypedActor;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
 import com.fixedorgo.transit.Route.RouteApi.RouteData;
 import com.fixedorgo.transit.Dispatching.DispatchingApi.GetRouteData;
-import com.google.common.collect.ImmutableList;
 
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
-public class Dispatching extends UntypedActor {
+import static com.fixedorgo.transit.Dispatching.DispatchingApi.GetRouteTable;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
 
-    private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+public class Dispatching extends MeteredActor {
 
-    private final Map<String, List<String>> stations;
+    private final Symbols symbols = symbolsOf(getContext().system());
 
-    private final Map<String, String> reverseRoutes;
+    // Frozen once at load time and shared with the Route actors
+    private final RouteTable routeTable;
 
     public Dispatching(Map<String, List<String>> stations, Map<String, String> reverseRoutes) {
-        this.stations = stations;
-        this.reverseRoutes = reverseRoutes;
+        this.routeTable = RouteTable.create(stations, reverseRoutes, symbols);
     }
 
-    @Override
-    public void onReceive(Object message) throws Exception {
+    public Dispatching(RouteTable routeTable) {
+        this.routeTable = routeTable;
+    }
 
-        log.debug("Received message [{}]", message);
+    @Override
+    protected void onMessage(Object message) throws Exception {
 
         if (message instanceof GetRouteData) {
             final GetRouteData routeData = (GetRouteData) message;
-            final String routeId = routeData.reverseRoute ? reverseRoute(routeData.routeId) : routeData.routeId;
-            getSender().tell(new RouteData(routeId, stationsFor(routeId)), getSelf());
+            final int routeId = routeData.reverseRoute ? reverseRoute(routeData.routeId) : routeData.routeId;
+            getSender().tell(routeDataFor(routeId), getSelf());
+        } else if (message.equals(GetRouteTable)) {
+            getSender().tell(routeTable, getSelf());
         } else {
             unhandled(message);
         }
 
     }
 
-    private List<String> stationsFor(String routeId) {
-        if (!stations.containsKey(routeId))
-            throw new IllegalArgumentException(String.format("Unable to find Stations for Route [%s]", routeId));
-        return ImmutableList.copyOf(stations.get(routeId));
+    private RouteData routeDataFor(int routeId) {
+        if (!routeTable.contains(routeId))
+            throw new IllegalArgumentException(String.format("Unable to find Stations for Route [%s]",
+                    symbols.name(routeId)));
+        return routeTable.routeData(routeId); // shared, the receivers never modify it
     }
 
-    private String reverseRoute(String routeId) {
-        if (!reverseRoutes.containsKey(routeId))
-            throw new IllegalArgumentException(String.format("Unable to find reverse Route for Route [%s]", routeId));
-        return reverseRoutes.get(routeId);
+    private int reverseRoute(int routeId) {
+        final int reverseRoute = routeTable.contains(routeId) ? routeTable.reverseRoute(routeId) : Symbols.NONE;
+        if (reverseRoute == Symbols.NONE)
+            throw new IllegalArgumentException(String.format("Unable to find reverse Route for Route [%s]",
+                    symbols.name(routeId)));
+        return reverseRoute;
     }
 
     public static class DispatchingApi {
 
+        /**
+         * Request for the whole {@link RouteTable}, to bootstrap many Route actors without a request each.
+         */
+        public static final Object GetRouteTable = "Get Route Table";
+
+        /**
+         * Request for the Stations of the Route symbol or of its reverse Route.
+         */
         public static class GetRouteData implements Serializable {
-            public final String routeId;
+            public final int routeId;
             public final boolean reverseRoute;
 
-            public GetRouteData(String routeId, boolean reverseRoute) {
+            public GetRouteData(int routeId, boolean reverseRoute) {
                 this.routeId = routeId;
                 this.reverseRoute = reverseRoute;
             }
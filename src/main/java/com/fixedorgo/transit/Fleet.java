@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import com.fixedorgo.transit.DepartureData.DepartureApi.SetDepartureFor;
+import com.fixedorgo.transit.Station.StationApi.BoardingGroup;
+import com.fixedorgo.transit.Station.StationApi.Stopped;
+import org.uncommons.maths.number.NumberGenerator;
+import org.uncommons.maths.random.ContinuousUniformGenerator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.Fleet.FleetApi.Step;
+import static com.fixedorgo.transit.Moving.MAX_SPEED_FACTOR;
+import static com.fixedorgo.transit.Moving.MIN_SPEED_FACTOR;
+import static com.fixedorgo.transit.PassengerPoolExtension.passengersOf;
+import static com.fixedorgo.transit.RandomExtension.randomOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * All Buses of the {@link Scenario} in a single actor: they move in a {@link FleetKernel} stepped every
+ * {@code transit.fleet.tick} of simulation time, and only their stops are messages, one {@link Stopped}
+ * to the Station answered by one {@link BoardingGroup}. Passengers leave at the Stations planned by the
+ * {@link JourneyPlanner}, as with {@link Shuttle}. The speed factor is drawn once per leg between
+ * the Stations instead of once per Point.
+ */
+public class Fleet extends MeteredActor {
+
+    private final Clock clock = clockOf(getContext().system());
+
+    private final Symbols symbols = symbolsOf(getContext().system());
+
+    private final PassengerPool passengers = passengersOf(getContext().system());
+
+    private final NumberGenerator<Double> generator = new ContinuousUniformGenerator(MIN_SPEED_FACTOR, MAX_SPEED_FACTOR,
+            randomOf(getContext().system()).stream(getSelf().path().toStringWithoutAddress()));
+
+    private final long tick = getContext().system().settings().config()
+            .getDuration("transit.fleet.tick", MILLISECONDS);
+
+    private final ForkJoinPool pool;
+
+    private final FleetKernel kernel;
+
+    private final List<String> busRoutes;
+
+    private final int capacity;
+
+    private final long boardingTime;
+
+    private final ActorRef departures;
+
+    private final JourneyPlanner planner;
+
+    // Station actors by Station symbol
+    private ActorRef[] stations = new ActorRef[0];
+
+    // Bus symbols by slot and slots by Bus symbol
+    private final int[] busIds;
+
+    private int[] slots = new int[0];
+
+    // handles of the Passengers on board with the symbol of the Station to leave at, capacity per Bus
+    private final int[] onBoard;
+
+    private final int[] leaveAt;
+
+    private long lastStep;
+
+    /**
+     * @param busRoutes Route of every Bus, the Buses are named {@code bus-i} by their index
+     */
+    public Fleet(List<String> busRoutes, int capacity, long boardingTime, Map<String, ActorRef> stations,
+                 ActorRef departures, Scenario scenario, RouteTable routeTable, JourneyPlanner planner) {
+        final int parallelism = getContext().system().settings().config().getInt("transit.fleet.parallelism");
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.kernel = new FleetKernel(busRoutes.size(), routeTable, scenario.getGeometries(),
+                scenario.getLocations(), symbols, pool);
+        this.busRoutes = busRoutes;
+        this.capacity = capacity;
+        this.boardingTime = boardingTime;
+        this.departures = departures;
+        this.planner = planner;
+        for (Map.Entry<String, ActorRef> station : stations.entrySet()) {
+            final int symbol = symbols.id(station.getKey());
+            if (symbol >= this.stations.length)
+                this.stations = Arrays.copyOf(this.stations, Math.max(this.stations.length * 2, symbol + 1));
+            this.stations[symbol] = station.getValue();
+        }
+        this.busIds = new int[busRoutes.size()];
+        this.onBoard = new int[busRoutes.size() * capacity];
+        this.leaveAt = new int[busRoutes.size() * capacity];
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        lastStep = clock.currentTimeMillis();
+        for (int i = 0; i < busRoutes.size(); i++) {
+            final int vehicle = kernel.add(symbols.id(busRoutes.get(i)), lastStep);
+            busIds[vehicle] = symbols.id("bus-" + i);
+            if (busIds[vehicle] >= slots.length)
+                slots = Arrays.copyOf(slots, Math.max(slots.length * 2, busIds[vehicle] + 1));
+            slots[busIds[vehicle]] = vehicle;
+            stop(vehicle);
+        }
+        clock.scheduleOnce(tick, MILLISECONDS, getSelf(), Step, ActorRef.noSender());
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        super.postStop();
+        pool.shutdown();
+    }
+
+    @Override
+    protected void onMessage(Object message) throws Exception {
+
+        if (message.equals(Step)) {
+
+            final long now = clock.currentTimeMillis();
+            final int arrivals = kernel.step(lastStep, now);
+            for (int i = 0; i < arrivals; i++)
+                stop(kernel.arrived(i));
+            lastStep = now;
+            clock.scheduleOnce(tick, MILLISECONDS, getSelf(), Step, ActorRef.noSender());
+
+        } else if (message instanceof BoardingGroup) {
+
+            final BoardingGroup boarding = (BoardingGroup) message;
+            final int vehicle = slots[boarding.busId];
+            final int station = kernel.station(vehicle);
+            int load = kernel.load(vehicle);
+            for (int passenger : boarding.passengers) {
+                onBoard[vehicle * capacity + load] = passenger;
+                leaveAt[vehicle * capacity + load++] = planner.transfer(station, passengers.destination(passenger));
+            }
+            kernel.setLoad(vehicle, load);
+            departures.tell(new SetDepartureFor(station, kernel.route(vehicle)), getSelf());
+            kernel.depart(vehicle, generator.nextValue());
+
+        } else {
+            unhandled(message);
+        }
+
+    }
+
+    private void stop(int vehicle) {
+        final int station = kernel.station(vehicle);
+        final int[] alighting = alight(vehicle, station);
+        stations[station].tell(new Stopped(busIds[vehicle], kernel.route(vehicle), alighting, boardingTime,
+                capacity - kernel.load(vehicle)), getSelf());
+    }
+
+    private int[] alight(int vehicle, int station) {
+        final int offset = vehicle * capacity;
+        final int load = kernel.load(vehicle);
+        int leaving = 0;
+        for (int i = offset; i < offset + load; i++)
+            if (leaveAt[i] == station)
+                leaving++;
+        final int[] alighting = new int[leaving];
+        int kept = offset;
+        leaving = 0;
+        for (int i = offset; i < offset + load; i++) {
+            if (leaveAt[i] == station) {
+                alighting[leaving++] = onBoard[i];
+            } else {
+                onBoard[kept] = onBoard[i];
+                leaveAt[kept++] = leaveAt[i];
+            }
+        }
+        kernel.setLoad(vehicle, kept - offset);
+        return alighting;
+    }
+
+    public static class FleetApi {
+
+        static final Object Step = "Fleet Step";
+
+    }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.Route.RouteApi.RouteData;
+import com.javadocmd.simplelatlng.LatLng;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static com.fixedorgo.transit.RouteGeometry.ARRIVAL_RADIUS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Vehicle engine which keeps all Buses in primitive arrays, one slot per Bus, instead of a {@link Moving}
+ * actor for each of them. Every {@link #step} advances all moving Buses along their {@link RouteGeometry}
+ * by the same amount of simulation time in one loop, split across the cores of a {@link ForkJoinPool},
+ * and reports only the Buses which have reached their next Station.
+ * <p>
+ * A Bus stays at the Station until {@link #depart}. At the terminal Station it turns to the reverse Route.
+ * The kernel itself is not thread-safe, it is driven by a single actor, see {@link Fleet}.
+ */
+public final class FleetKernel {
+
+    // vehicles advanced by one fork-join task
+    private static final int THRESHOLD = 2048;
+
+    private final ForkJoinPool pool;
+
+    // Route data by Route symbol
+    private final RouteTable routeTable;
+
+    private final RouteGeometry[] geometries;
+
+    // index of the Point where a Bus stops at each Station of the Route, by Route symbol
+    private final int[][] stopPoints;
+
+    private int size;
+
+    private final int[] route;
+
+    // index of the current or next Station in the Route
+    private final int[] stop;
+
+    // index of the next Point to pass and the simulation time already spent on the way to it
+    private final int[] cursor;
+
+    private final double[] progress;
+
+    private final double[] speedFactor;
+
+    private final int[] load;
+
+    private final boolean[] stopped;
+
+    private final long[] arrivalTime;
+
+    private final double[] latitude;
+
+    private final double[] longitude;
+
+    // Buses arrived during the latest step, in the order of their slots
+    private final int[] arrived;
+
+    private int arrivals;
+
+    /**
+     * @param capacity   maximum number of Buses
+     * @param routeTable Routes of the Buses with their reverse Routes
+     * @param geometries geometry of every Route in the table
+     * @param locations  location of every Station of the Routes
+     * @param symbols    symbol table of the Route and Station ids
+     */
+    public FleetKernel(int capacity, RouteTable routeTable, Map<String, RouteGeometry> geometries,
+                       Map<String, LatLng> locations, Symbols symbols, ForkJoinPool pool) {
+        this.pool = pool;
+        this.routeTable = routeTable;
+        int routes = 0;
+        for (int routeId : routeTable.routes())
+            routes = Math.max(routes, routeId + 1);
+        this.geometries = new RouteGeometry[routes];
+        this.stopPoints = new int[routes][];
+        for (int routeId : routeTable.routes()) {
+            final String name = symbols.name(routeId);
+            final RouteGeometry geometry = geometries.get(name);
+            if (geometry == null)
+                throw new IllegalArgumentException(String.format("Unable to find geometry of Route [%s]", name));
+            final int[] stations = routeTable.stations(routeId);
+            final int[] points = new int[stations.length];
+            int from = 0;
+            for (int i = 0; i < stations.length; i++) {
+                final LatLng location = locations.get(symbols.name(stations[i]));
+                points[i] = location != null ? geometry.stopIndex(from, location, ARRIVAL_RADIUS) : -1;
+                if (points[i] < 0)
+                    throw new IllegalArgumentException(String.format("Route [%s] doesn't pass Station [%s]",
+                            name, symbols.name(stations[i])));
+                from = points[i] + 1;
+            }
+            this.geometries[routeId] = geometry;
+            this.stopPoints[routeId] = points;
+        }
+        route = new int[capacity];
+        stop = new int[capacity];
+        cursor = new int[capacity];
+        progress = new double[capacity];
+        speedFactor = new double[capacity];
+        load = new int[capacity];
+        stopped = new boolean[capacity];
+        arrivalTime = new long[capacity];
+        latitude = new double[capacity];
+        longitude = new double[capacity];
+        arrived = new int[capacity];
+    }
+
+    /**
+     * Places a new Bus at the first Station of the Route.
+     *
+     * @return slot of the Bus
+     */
+    public int add(int routeId, long time) {
+        if (size == route.length)
+            throw new IllegalStateException(String.format("Fleet is full [%s]", size));
+        if (!routeTable.contains(routeId) || geometries[routeId] == null)
+            throw new IllegalArgumentException(String.format("Unknown Route [%s]", routeId));
+        final int vehicle = size++;
+        route[vehicle] = routeId;
+        stopAt(vehicle, 0, time);
+        return vehicle;
+    }
+
+    /**
+     * Sends the stopped Bus to the next Station of its Route with the given speed factor.
+     */
+    public void depart(int vehicle, double speedFactor) {
+        if (!stopped[vehicle])
+            throw new IllegalStateException(String.format("Bus [%s] is already moving", vehicle));
+        if (stop[vehicle] == stopPoints[route[vehicle]].length - 1)
+            throw new IllegalStateException(String.format("Bus [%s] is at the end of a Route without reverse", vehicle));
+        cursor[vehicle] = stopPoints[route[vehicle]][stop[vehicle]] + 1;
+        stop[vehicle]++;
+        progress[vehicle] = 0;
+        this.speedFactor[vehicle] = speedFactor;
+        stopped[vehicle] = false;
+    }
+
+    /**
+     * Advances all moving Buses from one simulation time to another.
+     *
+     * @return number of Buses which have reached their next Station, see {@link #arrived(int)}
+     */
+    public int step(long from, long to) {
+        if (to > from)
+            pool.invoke(new Advance(0, size, from, to));
+        arrivals = 0;
+        for (int vehicle = 0; vehicle < size; vehicle++)
+            if (stopped[vehicle] && arrivalTime[vehicle] > from && arrivalTime[vehicle] <= to)
+                arrived[arrivals++] = vehicle;
+        return arrivals;
+    }
+
+    /**
+     * @return slot of the i-th Bus arrived during the latest step
+     */
+    public int arrived(int i) {
+        return arrived[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int route(int vehicle) {
+        return route[vehicle];
+    }
+
+    /**
+     * @return symbol of the Station where the Bus stays or which it moves to
+     */
+    public int station(int vehicle) {
+        return routeTable.stations(route[vehicle])[stop[vehicle]];
+    }
+
+    public boolean isStopped(int vehicle) {
+        return stopped[vehicle];
+    }
+
+    public long arrivalTime(int vehicle) {
+        return arrivalTime[vehicle];
+    }
+
+    public double latitude(int vehicle) {
+        return latitude[vehicle];
+    }
+
+    public double longitude(int vehicle) {
+        return longitude[vehicle];
+    }
+
+    public int load(int vehicle) {
+        return load[vehicle];
+    }
+
+    public void setLoad(int vehicle, int load) {
+        this.load[vehicle] = load;
+    }
+
+    private void advance(int vehicle, long from, long to) {
+        if (stopped[vehicle])
+            return;
+        final RouteGeometry geometry = geometries[route[vehicle]];
+        final int target = stopPoints[route[vehicle]][stop[vehicle]];
+        double budget = to - from;
+        while (true) {
+            final int point = cursor[vehicle];
+            final double segment = SECONDS.toMillis(geometry.duration(point)) * speedFactor[vehicle];
+            final double left = segment - progress[vehicle];
+            if (left > budget) {
+                // somewhere on the segment which ends at the Point
+                progress[vehicle] += budget;
+                final double share = progress[vehicle] / segment;
+                final int previous = point > 0 ? point - 1 : point;
+                latitude[vehicle] = geometry.latitude(previous)
+                        + (geometry.latitude(point) - geometry.latitude(previous)) * share;
+                longitude[vehicle] = geometry.longitude(previous)
+                        + (geometry.longitude(point) - geometry.longitude(previous)) * share;
+                return;
+            }
+            budget -= left;
+            progress[vehicle] = 0;
+            if (point == target) {
+                stopAt(vehicle, stop[vehicle], Math.max(to - (long) budget, from + 1));
+                return;
+            }
+            cursor[vehicle]++;
+        }
+    }
+
+    private void stopAt(int vehicle, int station, long time) {
+        int routeId = route[vehicle];
+        if (station == stopPoints[routeId].length - 1) {
+            // terminal Station: it is the first one of the reverse Route
+            final RouteData routeData = routeTable.routeData(routeId);
+            if (routeData.reverseStations != null) {
+                route[vehicle] = routeId = routeData.reverseRouteId;
+                station = 0;
+            }
+        }
+        stop[vehicle] = station;
+        cursor[vehicle] = stopPoints[routeId][station];
+        stopped[vehicle] = true;
+        arrivalTime[vehicle] = time;
+        latitude[vehicle] = geometries[routeId].latitude(cursor[vehicle]);
+        longitude[vehicle] = geometries[routeId].longitude(cursor[vehicle]);
+    }
+
+    /**
+     * Advances the Buses of the slot range, splitting it in halves down to {@link #THRESHOLD} slots.
+     */
+    private final class Advance extends RecursiveAction {
+
+        private final int low;
+
+        private final int high;
+
+        private final long from;
+
+        private final long to;
+
+        Advance(int low, int high, long from, long to) {
+            this.low = low;
+            this.high = high;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low <= THRESHOLD) {
+                for (int vehicle = low; vehicle < high; vehicle++)
+                    advance(vehicle, from, to);
+            } else {
+                final int middle = (low + high) >>> 1;
+                invokeAll(new Advance(low, middle, from, to), new Advance(middle, high, from, to));
+            }
+        }
+
+    }
+
+}
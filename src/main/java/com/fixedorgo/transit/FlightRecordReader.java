@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.fixedorgo.transit.FlightRecorder.MAGIC;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Decoder of the {@link FlightRecorder} dump: the records of all threads merged in wall clock order.
+ * <pre>
+ *     java com.fixedorgo.transit.FlightRecordReader flight-1433160000000.trf [last seconds]
+ * </pre>
+ */
+public class FlightRecordReader {
+
+    private final File file;
+
+    public FlightRecordReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return all records of the dump ordered by their wall clock time
+     */
+    public List<Record> read() throws IOException {
+        final List<Record> records = Lists.newArrayList();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException(String.format("File [%s] is not a flight recorder dump", file));
+            final long dumpTime = input.readLong();
+            final long dumpNanos = input.readLong();
+            final String[] names = new String[input.readInt()];
+            for (int name = 0; name < names.length; name++)
+                names[name] = input.readUTF();
+            final int threads = input.readInt();
+            for (int t = 0; t < threads; t++) {
+                final String thread = input.readUTF();
+                final int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    final long ids = input.readLong();
+                    final long simulationTime = input.readLong();
+                    final long wallNanos = input.readLong();
+                    records.add(new Record(thread, name(names, (int) (ids >>> 32)), name(names, (int) ids),
+                            simulationTime, dumpTime - NANOSECONDS.toMillis(dumpNanos - wallNanos),
+                            dumpNanos - wallNanos));
+                }
+            }
+        }
+        Collections.sort(records, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                return Long.compare(b.beforeDump, a.beforeDump);
+            }
+        });
+        return records;
+    }
+
+    private static String name(String[] names, int name) {
+        return name >= 0 && name < names.length ? names[name] : "#" + name;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FlightRecordReader <dump file> [last seconds]");
+            System.exit(1);
+        }
+        final long last = args.length > 1 ? SECONDS.toNanos(Long.parseLong(args[1])) : Long.MAX_VALUE;
+        for (Record record : new FlightRecordReader(new File(args[0])).read())
+            if (record.beforeDump <= last)
+                System.out.println(record);
+    }
+
+    /**
+     * Message handled by an actor: wall clock time in milliseconds and nanoseconds before the dump,
+     * simulation time in milliseconds.
+     */
+    public static class Record {
+
+        public final String thread;
+        public final String actor;
+        public final String message;
+        public final long simulationTime;
+        public final long wallTime;
+        public final long beforeDump;
+
+        public Record(String thread, String actor, String message, long simulationTime, long wallTime,
+                      long beforeDump) {
+            this.thread = thread;
+            this.actor = actor;
+            this.message = message;
+            this.simulationTime = simulationTime;
+            this.wallTime = wallTime;
+            this.beforeDump = beforeDump;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("-%.3f ms\t%d\t%s\t%s\t%s", beforeDump / 1e6, simulationTime, thread, actor, message);
+        }
+
+    }
+
+}
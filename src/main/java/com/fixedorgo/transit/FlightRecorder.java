@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Extension;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always-on record of the latest messages handled by the actors, instead of the debug log. Every thread has
+ * its own ring buffer of fixed-size binary records (actor, message type, simulation time, wall time), so
+ * recording neither locks nor allocates, and the oldest records are overwritten. The buffers are dumped on
+ * demand or on the first actor failure into a compact file, decoded by {@link FlightRecordReader}.
+ * <p>
+ * The actors and message types are recorded by their numbers in a name table of the recorder, which is dumped
+ * along. It is kept apart from the network-wide {@link Symbols}, so the Station and Route numbers stay dense.
+ *
+ * @see FlightRecorderExtension
+ */
+public class FlightRecorder implements Extension {
+
+    static final int MAGIC = 0x54524631; // "TRF1"
+
+    // longs per record: actor and message type numbers, simulation time, wall clock nanoseconds
+    static final int RECORD_SIZE = 3;
+
+    // actor paths and message types, numbered as they are recorded
+    private final Symbols names = new Symbols();
+
+    private final int capacity;
+
+    private final File dumpDirectory;
+
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<Ring> ring = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            final Ring ring = new Ring(Thread.currentThread().getName(), capacity);
+            rings.add(ring);
+            return ring;
+        }
+    };
+
+    // message type numbers of the message classes, resolved once per class
+    private final ClassValue<Integer> messageTypes = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return names.id(type.getSimpleName());
+        }
+    };
+
+    private final AtomicBoolean failureDumped = new AtomicBoolean();
+
+    /**
+     * @param capacity      records kept per thread, 0 disables recording
+     * @param dumpDirectory directory of the dump taken on the first actor failure, null - no dump on failure
+     */
+    public FlightRecorder(int capacity, File dumpDirectory) {
+        if (capacity < 0)
+            throw new IllegalArgumentException(String.format("Illegal flight recorder capacity [%s]", capacity));
+        this.capacity = capacity;
+        this.dumpDirectory = dumpDirectory;
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @return number of the actor path in the name table of the recorder
+     */
+    public int actor(String path) {
+        return names.id(path);
+    }
+
+    /**
+     * @return number of the message type: the String message itself or the simple name of the message class
+     */
+    public int messageType(Object message) {
+        return message instanceof String ? names.id((String) message) : messageTypes.get(message.getClass());
+    }
+
+    /**
+     * Records a message handled by the actor on the current thread.
+     */
+    public void record(int actor, int messageType, long simulationTime) {
+        if (capacity > 0)
+            ring.get().add(actor, messageType, simulationTime, System.nanoTime());
+    }
+
+    /**
+     * Dumps the buffers of all threads once, on the first failure, if the dump directory is set.
+     *
+     * @return the dump file or null if no dump was taken
+     */
+    public File dumpOnFailure() throws IOException {
+        if (dumpDirectory == null || capacity == 0 || !failureDumped.compareAndSet(false, true))
+            return null;
+        final File file = new File(dumpDirectory, String.format("flight-%d.trf", System.currentTimeMillis()));
+        dump(file);
+        return file;
+    }
+
+    /**
+     * Writes the records of all threads with the name table. The threads keep recording, so the latest
+     * records of a busy thread may be torn; they are the ones written during the dump.
+     */
+    public void dump(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeLong(System.currentTimeMillis());
+            output.writeLong(System.nanoTime());
+            final int size = names.size();
+            output.writeInt(size);
+            for (int name = 0; name < size; name++)
+                output.writeUTF(names.name(name));
+            output.writeInt(rings.size());
+            for (Ring ring : rings)
+                ring.dump(output);
+        }
+    }
+
+    private static final class Ring {
+
+        private final String thread;
+
+        private final long[] records;
+
+        private final int capacity;
+
+        // number of records written ever, published for the dumping thread
+        private final AtomicLong written = new AtomicLong();
+
+        Ring(String thread, int capacity) {
+            this.thread = thread;
+            this.capacity = capacity;
+            this.records = new long[capacity * RECORD_SIZE];
+        }
+
+        void add(int actor, int messageType, long simulationTime, long wallTime) {
+            final long position = written.get();
+            final int offset = (int) (position % capacity) * RECORD_SIZE;
+            records[offset] = (long) actor << 32 | messageType & 0xFFFFFFFFL;
+            records[offset + 1] = simulationTime;
+            records[offset + 2] = wallTime;
+            written.lazySet(position + 1);
+        }
+
+        void dump(DataOutputStream output) throws IOException {
+            final long written = this.written.get();
+            final int count = (int) Math.min(written, capacity);
+            output.writeUTF(thread);
+            output.writeInt(count);
+            for (long position = written - count; position < written; position++) {
+                final int offset = (int) (position % capacity) * RECORD_SIZE;
+                output.writeLong(records[offset]);
+                output.writeLong(records[offset + 1]);
+                output.writeLong(records[offset + 2]);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+import com.typesafe.config.Config;
+
+import java.io.File;
+
+/**
+ * Provides the {@link FlightRecorder} of an {@link ActorSystem} according to the {@code transit.flight-recorder}
+ * settings: the number of records kept per thread and the directory of the dump taken on the first failure.
+ */
+public class FlightRecorderExtension extends AbstractExtensionId<FlightRecorder> implements ExtensionIdProvider {
+
+    public static final FlightRecorderExtension FlightRecorderProvider = new FlightRecorderExtension();
+
+    public static FlightRecorder recorderOf(ActorSystem system) {
+        return FlightRecorderProvider.get(system);
+    }
+
+    @Override
+    public FlightRecorderExtension lookup() {
+        return FlightRecorderProvider;
+    }
+
+    @Override
+    public FlightRecorder createExtension(ExtendedActorSystem system) {
+        final Config config = system.settings().config().getConfig("transit.flight-recorder");
+        final String directory = config.getString("dump-directory");
+        return new FlightRecorder(config.getInt("capacity"),
+                directory.isEmpty() ? null : new File(directory));
+    }
+
+}
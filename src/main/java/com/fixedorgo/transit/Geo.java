@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import static com.javadocmd.simplelatlng.util.LatLngConfig.getEarthRadius;
+import static com.javadocmd.simplelatlng.util.LengthUnit.METER;
+import static java.lang.Math.asin;
+import static java.lang.Math.cos;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * Distance calculations on the raw coordinates, without {@link com.javadocmd.simplelatlng.LatLng} objects.
+ */
+public class Geo {
+
+    private static final double EARTH_RADIUS = getEarthRadius(METER);
+
+    /**
+     * Meters in one degree of latitude.
+     */
+    public static final double METERS_PER_DEGREE = toRadians(1) * EARTH_RADIUS;
+
+    // beyond this the planar approximation is no longer below a meter of error
+    static final double PLANAR_LIMIT = 20000; // meters
+
+    /**
+     * Equirectangular approximation of the distance in meters. Within a city its error is far below
+     * a meter, while it is several times cheaper than the haversine formula.
+     */
+    public static double planarDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double x = toRadians(longitude2 - longitude1) * cos(toRadians((latitude1 + latitude2) / 2));
+        final double y = toRadians(latitude2 - latitude1);
+        return sqrt(x * x + y * y) * EARTH_RADIUS;
+    }
+
+    /**
+     * Haversine distance in meters, exact on the sphere.
+     */
+    public static double haversineDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double dLatitude = sin(toRadians(latitude2 - latitude1) / 2);
+        final double dLongitude = sin(toRadians(longitude2 - longitude1) / 2);
+        final double a = dLatitude * dLatitude
+                + cos(toRadians(latitude1)) * cos(toRadians(latitude2)) * dLongitude * dLongitude;
+        return 2 * asin(min(1, sqrt(a))) * EARTH_RADIUS;
+    }
+
+    /**
+     * Distance in meters: the planar approximation within a city, the haversine formula beyond it.
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double distance = planarDistance(latitude1, longitude1, latitude2, longitude2);
+        return distance < PLANAR_LIMIT ? distance : haversineDistance(latitude1, longitude1, latitude2, longitude2);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values in the style of HdrHistogram: the buckets are powers of
+ * two, each divided into 16 linear sub-buckets, so any value is kept with about 6% precision in constant
+ * memory. Recording is a few atomic increments and is safe from any number of threads; the reading methods
+ * see a consistent enough picture for monitoring, not an exact snapshot.
+ * <p>
+ * A single writer with many values collects them in a {@link Batch} and adds the batch at once. The batch may
+ * also count events without a value, so the count includes the events whose values were not measured, while
+ * the mean and the percentiles are of the measured values.
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    // number of the recorded values, the events of the batches counted without a value are not here
+    private final AtomicLong values = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        final long v = Math.max(value, 0);
+        counts.incrementAndGet(index(v));
+        count.incrementAndGet();
+        values.incrementAndGet();
+        sum.addAndGet(v);
+        updateMax(v);
+    }
+
+    /**
+     * Adds the values of the batch and clears it.
+     */
+    void add(Batch batch) {
+        long sum = 0;
+        long max = 0;
+        for (int i = 0; i < batch.size; i++) {
+            final long v = batch.values[i];
+            counts.incrementAndGet(index(v));
+            sum += v;
+            max = Math.max(max, v);
+        }
+        count.addAndGet(batch.count);
+        values.addAndGet(batch.size);
+        this.sum.addAndGet(sum);
+        updateMax(max);
+        batch.count = 0;
+        batch.size = 0;
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value))
+            ;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return mean value or NaN if nothing was recorded
+     */
+    public double getMean() {
+        final long values = this.values.get();
+        return values > 0 ? (double) sum.get() / values : Double.NaN;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        final long values = this.values.get();
+        if (values == 0)
+            return 0;
+        final long rank = Math.max((long) Math.ceil(values * percentile / 100), 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Values of a single writer waiting to be added to a {@link Histogram}, not thread-safe.
+     */
+    static final class Batch {
+
+        private static final int CAPACITY = 64;
+
+        private long[] values = new long[4];
+
+        private int size;
+
+        private long count;
+
+        /**
+         * Counts an event without its value.
+         */
+        void count() {
+            count++;
+        }
+
+        /**
+         * @return {@code true} if the batch is full and has to be added to the histogram
+         */
+        boolean record(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = Math.max(value, 0);
+            count++;
+            return size == CAPACITY;
+        }
+
+    }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Extension;
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only binary journal of the simulation events, written to a memory-mapped file.
+ * <p>
+ * The actors only copy the event fields into a preallocated ring of records, so journaling allocates nothing
+ * on their threads. A single writer thread encodes the records into the file by batches. When the ring is full
+ * the actors wait for the writer. Ids are numbers of the {@link Symbols} table, every name is written once
+ * before its first use.
+ * <p>
+ * The file is read back by the {@link JournalReader}.
+ */
+public class Journal implements Extension {
+
+    static final int MAGIC = 0x54524a31; // "TRJ1"
+
+    static final byte SYMBOL = 1;
+    static final byte TRACK = 2;
+    static final byte DEPARTURE = 3;
+    static final byte BOARDING = 4;
+    static final byte ALIGHTING = 5;
+    static final byte PASSENGER_ARRIVED = 6;
+
+    // the largest encoded record is a symbol with its name
+    static final int MAX_RECORD_SIZE = 1 + 4 + 2 + 0xFFFF;
+
+    private static final Logger log = LoggerFactory.getLogger(Journal.class);
+
+    private static final Journal DISABLED = new Journal();
+
+    private final boolean enabled;
+
+    private final int capacity;
+
+    private final int mask;
+
+    // ring of records in columns
+    private final byte[] types;
+    private final long[] times;
+    private final int[] firsts;
+    private final int[] seconds;
+    private final int[] thirds;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+
+    // sequence number of the record stored in every slot of the ring, once it is complete
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final Symbols symbols;
+
+    private final Writer writer;
+
+    private Journal() {
+        enabled = false;
+        capacity = mask = 0;
+        types = null;
+        times = null;
+        firsts = seconds = thirds = null;
+        xs = ys = zs = null;
+        published = null;
+        symbols = null;
+        writer = null;
+    }
+
+    /**
+     * @param file        journal file, replaced if exists
+     * @param capacity    number of records in the ring, rounded up to a power of two
+     * @param segmentSize size of the file region mapped at once
+     * @param symbols     names of the ids referenced by the events
+     */
+    public Journal(File file, int capacity, long segmentSize, Symbols symbols) throws IOException {
+        this.enabled = true;
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = this.capacity - 1;
+        types = new byte[this.capacity];
+        times = new long[this.capacity];
+        firsts = new int[this.capacity];
+        seconds = new int[this.capacity];
+        thirds = new int[this.capacity];
+        xs = new double[this.capacity];
+        ys = new double[this.capacity];
+        zs = new double[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++)
+            published.set(i, -1);
+        this.symbols = symbols;
+        writer = new Writer(file, Math.max(segmentSize, MAX_RECORD_SIZE));
+        writer.start();
+    }
+
+    /**
+     * @return journal which ignores all events
+     */
+    public static Journal disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void track(long time, int source, double latitude, double longitude, double distance) {
+        append(TRACK, time, source, 0, 0, latitude, longitude, distance);
+    }
+
+    public void departure(long time, int station, int route) {
+        append(DEPARTURE, time, station, route, 0, 0, 0, 0);
+    }
+
+    public void boarding(long time, int station, int route, int passengers) {
+        append(BOARDING, time, station, route, passengers, 0, 0, 0);
+    }
+
+    public void alighting(long time, int station, int passengers) {
+        append(ALIGHTING, time, station, 0, passengers, 0, 0, 0);
+    }
+
+    public void passengerArrived(long time, int station, int passenger) {
+        append(PASSENGER_ARRIVED, time, station, 0, passenger, 0, 0, 0);
+    }
+
+    /**
+     * Writes all pending records and closes the file.
+     */
+    public void close() {
+        if (!enabled)
+            return;
+        writer.running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(byte type, long time, int first, int second, int third, double x, double y, double z) {
+        if (!enabled)
+            return;
+        final long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() >= capacity) {
+            if (!writer.isAlive())
+                throw new IllegalStateException("Journal is closed");
+            LockSupport.parkNanos(1000); // backpressure: the writer falls behind
+        }
+        final int slot = (int) (sequence & mask);
+        types[slot] = type;
+        times[slot] = time;
+        firsts[slot] = first;
+        seconds[slot] = second;
+        thirds[slot] = third;
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+        published.lazySet(slot, sequence);
+    }
+
+    private class Writer extends Thread {
+
+        private final RandomAccessFile file;
+
+        private final FileChannel channel;
+
+        private final long segmentSize;
+
+        private final BitSet written = new BitSet();
+
+        private MappedByteBuffer buffer;
+
+        private long segmentStart = 0;
+
+        volatile boolean running = true;
+
+        Writer(File file, long segmentSize) throws IOException {
+            super("journal-writer");
+            setDaemon(true);
+            this.file = new RandomAccessFile(file, "rw");
+            this.file.setLength(0);
+            this.channel = this.file.getChannel();
+            this.segmentSize = segmentSize;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            this.buffer.putInt(MAGIC);
+        }
+
+        @Override
+        public void run() {
+            try {
+                long next = consumed.get();
+                while (running || next < claimed.get()) {
+                    final int slot = (int) (next & mask);
+                    if (published.get(slot) != next) {
+                        // nothing to write, or the record is being copied right now
+                        if (!running && next >= claimed.get())
+                            break;
+                        LockSupport.parkNanos(running ? 100000 : 1000);
+                        continue;
+                    }
+                    encode(slot);
+                    consumed.lazySet(++next);
+                }
+                buffer.force();
+                channel.truncate(segmentStart + buffer.position());
+            } catch (IOException e) {
+                log.error("Unable to write the journal", e);
+            } finally {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    log.error("Unable to close the journal", e);
+                }
+            }
+        }
+
+        private void encode(int slot) throws IOException {
+            final byte type = types[slot];
+            symbol(firsts[slot]);
+            if (type == BOARDING || type == DEPARTURE)
+                symbol(seconds[slot]);
+            ensureRemaining(MAX_RECORD_SIZE);
+            buffer.put(type);
+            buffer.putLong(times[slot]);
+            buffer.putInt(firsts[slot]);
+            switch (type) {
+                case TRACK:
+                    buffer.putDouble(xs[slot]);
+                    buffer.putDouble(ys[slot]);
+                    buffer.putDouble(zs[slot]);
+                    break;
+                case DEPARTURE:
+                    buffer.putInt(seconds[slot]);
+                    break;
+                case BOARDING:
+                    buffer.putInt(seconds[slot]);
+                    buffer.putInt(thirds[slot]);
+                    break;
+                case ALIGHTING:
+                case PASSENGER_ARRIVED:
+                    buffer.putInt(thirds[slot]);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void symbol(int symbol) throws IOException {
+            if (written.get(symbol))
+                return;
+            final byte[] name = symbols.name(symbol).getBytes(Charsets.UTF_8);
+            final int length = Math.min(name.length, 0xFFFF);
+            ensureRemaining(MAX_RECORD_SIZE);
+            buffer.put(SYMBOL);
+            buffer.putInt(symbol);
+            buffer.putShort((short) length);
+            buffer.put(name, 0, length);
+            written.set(symbol);
+        }
+
+        private void ensureRemaining(int size) throws IOException {
+            if (buffer.remaining() >= size)
+                return;
+            segmentStart += buffer.position();
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+        }
+
+    }
+
+}
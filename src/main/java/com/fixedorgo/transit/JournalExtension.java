@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+import com.typesafe.config.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+
+/**
+ * Provides the {@link Journal} of an {@link ActorSystem}. The journal is written to {@code transit.journal.path}
+ * and closed on termination of the system; with an empty path the events are not journaled at all.
+ */
+public class JournalExtension extends AbstractExtensionId<Journal> implements ExtensionIdProvider {
+
+    public static final JournalExtension JournalProvider = new JournalExtension();
+
+    public static Journal journalOf(ActorSystem system) {
+        return JournalProvider.get(system);
+    }
+
+    @Override
+    public JournalExtension lookup() {
+        return JournalProvider;
+    }
+
+    @Override
+    public Journal createExtension(ExtendedActorSystem system) {
+        final Config config = system.settings().config().getConfig("transit.journal");
+        final String path = config.getString("path");
+        if (path.isEmpty())
+            return Journal.disabled();
+        try {
+            final Journal journal = new Journal(new File(path), config.getInt("capacity"),
+                    config.getBytes("segment-size"), symbolsOf(system));
+            system.registerOnTermination(new Runnable() {
+                @Override
+                public void run() {
+                    journal.close();
+                }
+            });
+            return journal;
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Unable to create the journal [%s]", path), e);
+        }
+    }
+
+}
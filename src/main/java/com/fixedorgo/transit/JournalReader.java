@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+
+import static com.fixedorgo.transit.Journal.ALIGHTING;
+import static com.fixedorgo.transit.Journal.BOARDING;
+import static com.fixedorgo.transit.Journal.DEPARTURE;
+import static com.fixedorgo.transit.Journal.MAGIC;
+import static com.fixedorgo.transit.Journal.MAX_RECORD_SIZE;
+import static com.fixedorgo.transit.Journal.PASSENGER_ARRIVED;
+import static com.fixedorgo.transit.Journal.SYMBOL;
+import static com.fixedorgo.transit.Journal.TRACK;
+
+/**
+ * Sequential reader of the {@link Journal} file. The file is mapped by large windows and decoded
+ * without creating objects per event, except for the ids which are resolved once.
+ */
+public class JournalReader {
+
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final File file;
+
+    public JournalReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Feeds all events of the journal to the visitor, in order they were written.
+     */
+    public void replay(Visitor visitor) throws IOException {
+        final List<String> symbols = Lists.newArrayList();
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = input.getChannel();
+            final long size = channel.size();
+            long windowStart = 0;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+            if (buffer.remaining() < 4 || buffer.getInt() != MAGIC)
+                throw new IOException(String.format("File [%s] is not a journal", file));
+
+            while (windowStart + buffer.position() < size) {
+                if (buffer.remaining() < MAX_RECORD_SIZE && windowStart + buffer.limit() < size) {
+                    windowStart += buffer.position();
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(size - windowStart, WINDOW_SIZE));
+                }
+                final byte type = buffer.get();
+                if (type == SYMBOL) {
+                    final int symbol = buffer.getInt();
+                    final byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(name);
+                    while (symbols.size() <= symbol)
+                        symbols.add(null);
+                    symbols.set(symbol, new String(name, Charsets.UTF_8));
+                    continue;
+                }
+                final long time = buffer.getLong();
+                final String first = symbols.get(buffer.getInt());
+                switch (type) {
+                    case TRACK:
+                        visitor.track(time, first, buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+                        break;
+                    case DEPARTURE:
+                        visitor.departure(time, first, symbols.get(buffer.getInt()));
+                        break;
+                    case BOARDING:
+                        visitor.boarding(time, first, symbols.get(buffer.getInt()), buffer.getInt());
+                        break;
+                    case ALIGHTING:
+                        visitor.alighting(time, first, buffer.getInt());
+                        break;
+                    case PASSENGER_ARRIVED:
+                        visitor.passengerArrived(time, first, buffer.getInt());
+                        break;
+                    default:
+                        throw new IOException(String.format("Unknown event type [%s] at [%s]",
+                                type, windowStart + buffer.position() - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the tracks of all vehicles, as kept by {@link Tracking}.
+     *
+     * @return tracks by the id of the Bus
+     */
+    public Map<String, TrackStore> tracks() throws IOException {
+        final Map<String, TrackStore> tracks = Maps.newHashMap();
+        replay(new Adapter() {
+            @Override
+            public void track(long time, String source, double latitude, double longitude, double distance) {
+                TrackStore track = tracks.get(source);
+                if (track == null)
+                    tracks.put(source, track = new TrackStore());
+                track.append(time, latitude, longitude, distance);
+            }
+        });
+        return tracks;
+    }
+
+    /**
+     * Rebuilds the departures from every Station, as kept by {@link DepartureData}.
+     *
+     * @param symbols table to intern the Station and Route ids, which are numbered anew
+     */
+    public DepartureHistory departures(final Symbols symbols) throws IOException {
+        final DepartureHistory departures = new DepartureHistory();
+        replay(new Adapter() {
+            @Override
+            public void departure(long time, String station, String route) {
+                departures.add(symbols.id(station), symbols.id(route), time);
+            }
+        });
+        return departures;
+    }
+
+    public interface Visitor {
+
+        void track(long time, String source, double latitude, double longitude, double distance);
+
+        void departure(long time, String station, String route);
+
+        void boarding(long time, String station, String route, int passengers);
+
+        void alighting(long time, String station, int passengers);
+
+        void passengerArrived(long time, String station, int passenger);
+
+    }
+
+    /**
+     * Visitor which ignores all events, to override the interesting ones only.
+     */
+    public static class Adapter implements Visitor {
+
+        @Override
+        public void track(long time, String source, double latitude, double longitude, double distance) {
+        }
+
+        @Override
+        public void departure(long time, String station, String route) {
+        }
+
+        @Override
+        public void boarding(long time, String station, String route, int passengers) {
+        }
+
+        @Override
+        public void alighting(long time, String station, int passengers) {
+        }
+
+        @Override
+        public void passengerArrived(long time, String station, int passenger) {
+        }
+
+    }
+
+}
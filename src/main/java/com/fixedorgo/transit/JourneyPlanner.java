@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Journeys between all pairs of Stations over the Route table of {@link Dispatching}: the Routes to take
+ * from the origin and the Station to leave the first of them, for the fewest rides and then the fewest stops.
+ * <p>
+ * Journeys from one origin are found all at once by RAPTOR-style rounds: round {@code k} scans every Route
+ * serving a Station improved in round {@code k - 1}, so it finds all Stations reachable with {@code k} rides.
+ * The rows of the origins are computed on first use and cached, so a Passenger picks its Routes
+ * and its transfer by two array reads.
+ */
+public class JourneyPlanner {
+
+    public static final int MAX_RIDES = 3;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Stations and Routes by local index, their symbols and the Station index of every symbol
+    private final int[] stationSymbols;
+
+    private final int[] routeSymbols;
+
+    private final int[] stationIndex;
+
+    // local Station indexes of every Route in order
+    private final int[][] routeStops;
+
+    // Routes serving every Station with the position of the Station in them
+    private final int[][] stationRoutes;
+
+    private final int[][] stationPositions;
+
+    private final AtomicReferenceArray<Row> rows;
+
+    /**
+     * @param stations Stations of every Route including the reverse ones, as given to {@link Dispatching}
+     */
+    public JourneyPlanner(Map<String, List<String>> stations, Symbols symbols) {
+        final Map<Integer, Integer> indexes = Maps.newLinkedHashMap();
+        routeSymbols = new int[stations.size()];
+        routeStops = new int[stations.size()][];
+        int route = 0;
+        for (Map.Entry<String, List<String>> entry : stations.entrySet()) {
+            routeSymbols[route] = symbols.id(entry.getKey());
+            final int[] stops = new int[entry.getValue().size()];
+            for (int i = 0; i < stops.length; i++) {
+                final int symbol = symbols.id(entry.getValue().get(i));
+                if (!indexes.containsKey(symbol))
+                    indexes.put(symbol, indexes.size());
+                stops[i] = indexes.get(symbol);
+            }
+            routeStops[route++] = stops;
+        }
+
+        stationSymbols = new int[indexes.size()];
+        int maxSymbol = 0;
+        for (Map.Entry<Integer, Integer> entry : indexes.entrySet()) {
+            stationSymbols[entry.getValue()] = entry.getKey();
+            maxSymbol = Math.max(maxSymbol, entry.getKey());
+        }
+        stationIndex = new int[maxSymbol + 1];
+        Arrays.fill(stationIndex, -1);
+        for (int i = 0; i < stationSymbols.length; i++)
+            stationIndex[stationSymbols[i]] = i;
+
+        final List<List<int[]>> serving = Lists.newArrayListWithCapacity(stationSymbols.length);
+        for (int i = 0; i < stationSymbols.length; i++)
+            serving.add(Lists.<int[]>newArrayList());
+        for (int r = 0; r < routeStops.length; r++)
+            for (int p = 0; p < routeStops[r].length; p++)
+                serving.get(routeStops[r][p]).add(new int[]{r, p});
+        stationRoutes = new int[stationSymbols.length][];
+        stationPositions = new int[stationSymbols.length][];
+        for (int s = 0; s < stationSymbols.length; s++) {
+            final List<int[]> routes = serving.get(s);
+            stationRoutes[s] = new int[routes.size()];
+            stationPositions[s] = new int[routes.size()];
+            for (int i = 0; i < routes.size(); i++) {
+                stationRoutes[s][i] = routes.get(i)[0];
+                stationPositions[s][i] = routes.get(i)[1];
+            }
+        }
+
+        rows = new AtomicReferenceArray<>(stationSymbols.length);
+    }
+
+    /**
+     * @return number of Stations in the network
+     */
+    public int stationCount() {
+        return stationSymbols.length;
+    }
+
+    /**
+     * @return symbol of the Station by its number from zero to {@link #stationCount()}
+     */
+    public int station(int i) {
+        return stationSymbols[i];
+    }
+
+    /**
+     * @return symbols of the Routes to take from the origin, shared and never modified;
+     * empty if the destination is not reachable within {@link #MAX_RIDES} rides or is the origin itself
+     */
+    public BitSet routes(int origin, int destination) {
+        final Row row = row(origin);
+        final int target = index(destination);
+        return row != null && target >= 0 ? row.routes[target] : Row.NO_ROUTES;
+    }
+
+    /**
+     * @return symbol of the Station to leave the first Route at, the destination itself for a direct journey,
+     * {@link Symbols#NONE} if the destination is not reachable or is the origin itself
+     */
+    public int transfer(int origin, int destination) {
+        final Row row = row(origin);
+        final int target = index(destination);
+        if (row == null || target < 0 || row.rides[target] == UNREACHABLE || row.transfers[target] < 0)
+            return Symbols.NONE;
+        return stationSymbols[row.transfers[target]];
+    }
+
+    /**
+     * @return number of rides of the journey, zero for the origin itself, {@link Integer#MAX_VALUE}
+     * if the destination is not reachable
+     */
+    public int rides(int origin, int destination) {
+        final Row row = row(origin);
+        final int target = index(destination);
+        return row != null && target >= 0 ? row.rides[target] : UNREACHABLE;
+    }
+
+    private int index(int symbol) {
+        return symbol >= 0 && symbol < stationIndex.length ? stationIndex[symbol] : -1;
+    }
+
+    private Row row(int origin) {
+        final int index = index(origin);
+        if (index < 0)
+            return null;
+        Row row = rows.get(index);
+        if (row == null) {
+            // two threads may compute the same row, both results are equal
+            row = search(index);
+            rows.compareAndSet(index, null, row);
+        }
+        return row;
+    }
+
+    private Row search(int origin) {
+        final int count = stationSymbols.length;
+        final int[] rides = new int[count];
+        final int[] stops = new int[count];
+        final int[] transfers = new int[count];
+        final BitSet[] routes = new BitSet[count];
+        Arrays.fill(rides, UNREACHABLE);
+        Arrays.fill(transfers, -1);
+        rides[origin] = 0;
+
+        BitSet marked = new BitSet(count);
+        marked.set(origin);
+        for (int round = 1; round <= MAX_RIDES && !marked.isEmpty(); round++) {
+            final BitSet improved = new BitSet(count);
+            for (int from = marked.nextSetBit(0); from >= 0; from = marked.nextSetBit(from + 1)) {
+                for (int i = 0; i < stationRoutes[from].length; i++) {
+                    final int route = stationRoutes[from][i];
+                    final int[] routeStops = this.routeStops[route];
+                    for (int position = stationPositions[from][i] + 1; position < routeStops.length; position++) {
+                        final int to = routeStops[position];
+                        final int cost = stops[from] + position - stationPositions[from][i];
+                        if (rides[to] < round || (rides[to] == round && stops[to] < cost))
+                            continue;
+                        if (rides[to] == round && stops[to] == cost) {
+                            // equally good first Routes from the origin are all suitable
+                            if (round == 1)
+                                routes[to].set(routeSymbols[route]);
+                            continue;
+                        }
+                        rides[to] = round;
+                        stops[to] = cost;
+                        if (round == 1) {
+                            routes[to] = new BitSet();
+                            routes[to].set(routeSymbols[route]);
+                            transfers[to] = to;
+                        } else {
+                            routes[to] = routes[from];
+                            transfers[to] = transfers[from];
+                        }
+                        improved.set(to);
+                    }
+                }
+            }
+            marked = improved;
+        }
+
+        // Stations reached the same way share one set of Routes
+        final Map<BitSet, BitSet> canonical = Maps.newHashMap();
+        for (int s = 0; s < count; s++) {
+            if (routes[s] == null) {
+                routes[s] = Row.NO_ROUTES;
+            } else if (canonical.containsKey(routes[s])) {
+                routes[s] = canonical.get(routes[s]);
+            } else {
+                canonical.put(routes[s], routes[s]);
+            }
+        }
+        return new Row(rides, transfers, routes);
+    }
+
+    private static class Row {
+
+        static final BitSet NO_ROUTES = new BitSet();
+
+        final int[] rides;
+
+        final int[] transfers;
+
+        final BitSet[] routes;
+
+        Row(int[] rides, int[] transfers, BitSet[] routes) {
+            this.rides = rides;
+            this.transfers = transfers;
+            this.routes = routes;
+        }
+
+    }
+
+}
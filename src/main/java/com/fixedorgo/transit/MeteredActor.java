@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorCell;
+import akka.actor.UntypedActor;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.RequiresMessageQueue;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.FlightRecorderExtension.recorderOf;
+import static com.fixedorgo.transit.MetricsExtension.metricsOf;
+
+/**
+ * Actor which records its {@link Metrics} by its class name: the count of the messages by message type, and for
+ * one message in {@link Metrics#getSampling()} the processing time and the depth of its {@link MeteredMailbox}
+ * when the message is taken. The metrics are collected by the actor and added to the shared histograms when a
+ * batch is full, at least every second while the actor is busy and when it stops, so a message costs a few plain
+ * field updates. Every message is also recorded by the {@link FlightRecorder}, which is dumped on the first failure.
+ * Subclasses handle messages in {@link #onMessage} instead of {@code onReceive}.
+ */
+public abstract class MeteredActor extends UntypedActor implements RequiresMessageQueue<MeteredMailbox.MeteredSemantics> {
+
+    // nanoseconds between the additions of the batches to the shared histograms at most, if the actor is busy
+    private static final long PUBLISH_NANOS = 1000000000;
+
+    private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+    private final Clock clock = clockOf(getContext().system());
+
+    private final FlightRecorder recorder = recorderOf(getContext().system());
+
+    private final int name = recorder.isEnabled() ? recorder.actor(getSelf().path().toStringWithoutAddress()) : 0;
+
+    private final Metrics metrics = metricsOf(getContext().system());
+
+    // null if the metrics are disabled
+    private final ConcurrentMap<Object, Histogram> processing =
+            metrics.isEnabled() ? metrics.processing(getClass().getSimpleName()) : null;
+
+    private final Histogram mailbox = metrics.isEnabled() ? metrics.mailbox(getClass().getSimpleName()) : null;
+
+    private final Histogram.Batch depths = new Histogram.Batch();
+
+    // message types seen by the actor with their histograms and batches, looked up by a linear scan
+    private Object[] types = new Object[4];
+
+    private Histogram[] histograms = new Histogram[4];
+
+    private Histogram.Batch[] batches = new Histogram.Batch[4];
+
+    private int typeCount = 0;
+
+    private int untilSample = 1;
+
+    private long published = System.nanoTime();
+
+    // mailbox of the actor, null until the first message or if it is not metered
+    private MessageQueue queue;
+
+    @Override
+    public final void onReceive(Object message) throws Exception {
+        if (recorder.isEnabled())
+            recorder.record(name, recorder.messageType(message), clock.currentTimeMillis());
+
+        if (processing == null) {
+            handle(message);
+            return;
+        }
+        // String messages are constants, the others are told apart by their class
+        final Histogram.Batch batch = batch(message instanceof String ? message : message.getClass());
+        if (--untilSample > 0) {
+            batch.count();
+            handle(message);
+            return;
+        }
+        untilSample = metrics.getSampling();
+        boolean full = queue() != null && depths.record(queue.numberOfMessages());
+        final long start = System.nanoTime();
+        try {
+            handle(message);
+        } finally {
+            final long end = System.nanoTime();
+            full |= batch.record(end - start);
+            if (full || end - published > PUBLISH_NANOS)
+                publish(end);
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (processing != null)
+            publish(System.nanoTime());
+    }
+
+    private Histogram.Batch batch(Object type) {
+        for (int i = 0; i < typeCount; i++)
+            if (types[i] == type)
+                return batches[i];
+        for (int i = 0; i < typeCount; i++)
+            if (types[i].equals(type))
+                return batches[i];
+        if (typeCount == types.length) {
+            types = Arrays.copyOf(types, typeCount * 2);
+            histograms = Arrays.copyOf(histograms, typeCount * 2);
+            batches = Arrays.copyOf(batches, typeCount * 2);
+        }
+        types[typeCount] = type;
+        histograms[typeCount] = Metrics.histogram(processing, type);
+        return batches[typeCount++] = new Histogram.Batch();
+    }
+
+    private MessageQueue queue() {
+        if (queue == null && getContext() instanceof ActorCell) {
+            final MessageQueue queue = ((ActorCell) getContext()).mailbox().messageQueue();
+            if (queue instanceof MeteredMailbox.MeteredQueue)
+                this.queue = queue;
+        }
+        return queue;
+    }
+
+    private void publish(long now) {
+        for (int i = 0; i < typeCount; i++)
+            histograms[i].add(batches[i]);
+        mailbox.add(depths);
+        published = now;
+    }
+
+    private void handle(Object message) throws Exception {
+        try {
+            onMessage(message);
+        } catch (Exception | Error e) {
+            final File dump = recorder.dumpOnFailure();
+            if (dump != null)
+                log.error("Failed on message [{}], flight recorder dump [{}]", message, dump);
+            throw e;
+        }
+    }
+
+    protected abstract void onMessage(Object message) throws Exception;
+
+}
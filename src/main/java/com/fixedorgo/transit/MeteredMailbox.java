@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.BoundedMessageQueueSemantics;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import scala.Option;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.fixedorgo.transit.MetricsExtension.metricsOf;
+
+/**
+ * Mailbox which counts its messages, so the depth is known in constant time. It is required by every
+ * {@link MeteredActor} through {@link MeteredSemantics}, see {@code akka.actor.mailbox.requirements}.
+ * <p>
+ * The mailbox is unbounded and lossless unless its configuration gives a {@code capacity}. A bounded mailbox
+ * is lossy: when it is full the new message is dropped at once, so neither the sender waits nor the heap
+ * grows, which suits data such as track samples. The dropped messages are counted in the {@link Metrics}
+ * by the mailbox id.
+ * <p>
+ * The queues of a mailbox with {@code backlog = on} are counted into the backlog of the {@link Metrics},
+ * which the {@link TimeScaleController} keeps bounded.
+ */
+public class MeteredMailbox implements MailboxType, ProducesMessageQueue<MeteredMailbox.MeteredQueue> {
+
+    private final String id;
+
+    private final int capacity;
+
+    private final boolean backlog;
+
+    public MeteredMailbox(ActorSystem.Settings settings, Config config) {
+        id = config.getString("id");
+        backlog = config.hasPath("backlog") && config.getBoolean("backlog");
+        capacity = config.hasPath("capacity") ? config.getInt("capacity") : 0;
+        if (capacity < 0)
+            throw new IllegalArgumentException(String.format("Illegal mailbox capacity [%s]", capacity));
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        final MeteredQueue queue = capacity == 0 ? new UnboundedMeteredQueue()
+                : new BoundedMeteredQueue(capacity, system.isDefined() ? metricsOf(system.get()).dropped(id)
+                : new AtomicLong());
+        if (backlog && system.isDefined())
+            queue.register(metricsOf(system.get()).backlogQueues());
+        return queue;
+    }
+
+    public interface MeteredSemantics {
+    }
+
+    /**
+     * Counting queue, either {@link UnboundedMeteredQueue} or {@link BoundedMeteredQueue}.
+     */
+    public abstract static class MeteredQueue implements MessageQueue, MeteredSemantics {
+
+        private final Queue<Envelope> queue;
+
+        private final AtomicInteger depth = new AtomicInteger();
+
+        // queues of the backlog this queue is counted into until it is cleaned up, null if none
+        private Set<MeteredQueue> backlog;
+
+        MeteredQueue(Queue<Envelope> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            if (queue.offer(handle))
+                depth.incrementAndGet();
+            else
+                rejected(handle);
+        }
+
+        @Override
+        public Envelope dequeue() {
+            final Envelope handle = queue.poll();
+            if (handle != null)
+                depth.decrementAndGet();
+            return handle;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return depth.get();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            if (backlog != null)
+                backlog.remove(this);
+            Envelope handle;
+            while ((handle = dequeue()) != null)
+                deadLetters.enqueue(owner, handle);
+        }
+
+        void register(Set<MeteredQueue> backlog) {
+            this.backlog = backlog;
+            backlog.add(this);
+        }
+
+        /**
+         * Called for a message which doesn't fit the queue.
+         */
+        abstract void rejected(Envelope handle);
+
+    }
+
+    public static class UnboundedMeteredQueue extends MeteredQueue implements UnboundedMessageQueueSemantics {
+
+        public UnboundedMeteredQueue() {
+            super(new ConcurrentLinkedQueue<Envelope>());
+        }
+
+        @Override
+        void rejected(Envelope handle) {
+            throw new IllegalStateException("Unbounded queue rejected a message");
+        }
+
+    }
+
+    public static class BoundedMeteredQueue extends MeteredQueue implements BoundedMessageQueueSemantics {
+
+        private final AtomicLong dropped;
+
+        /**
+         * @param dropped counter of the messages dropped because the queue was full
+         */
+        public BoundedMeteredQueue(int capacity, AtomicLong dropped) {
+            super(new LinkedBlockingQueue<Envelope>(capacity));
+            this.dropped = dropped;
+        }
+
+        @Override
+        void rejected(Envelope handle) {
+            dropped.incrementAndGet();
+        }
+
+        @Override
+        public FiniteDuration pushTimeOut() {
+            return Duration.Zero(); // the senders never wait
+        }
+
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Extension;
+import com.google.common.collect.ImmutableList;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per actor type metrics of an {@link akka.actor.ActorSystem}: count and processing time histogram of every
+ * message type, mailbox depth seen by the actors, messages dropped by the bounded mailboxes, the backlog of
+ * the mailboxes and the lateness of the real-time scheduler. They are
+ * recorded by {@link MeteredActor} and {@link MeteredMailbox} into lock-free {@link Histogram}s and read as
+ * {@link Record}s, through JMX or an exported file.
+ *
+ * @see MetricsExtension
+ */
+public class Metrics implements Extension, MetricsMXBean {
+
+    private static final String MAILBOX = "(mailbox depth)";
+
+    private static final String SCHEDULER = "(scheduler)";
+
+    private static final String DROPPED = "(dropped)";
+
+    private static final String BACKLOG = "(backlog)";
+
+    private final boolean enabled;
+
+    private final int sampling;
+
+    // processing time in nanoseconds by actor type and message type: the String message itself or its class
+    private final ConcurrentMap<String, ConcurrentMap<Object, Histogram>> processing = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Histogram> mailboxes = new ConcurrentHashMap<>();
+
+    // dropped messages by mailbox id, counted even if the metrics are disabled
+    private final ConcurrentMap<String, AtomicLong> dropped = new ConcurrentHashMap<>();
+
+    // queues of the mailboxes with backlog = on, counted even if the metrics are disabled
+    private final Set<MeteredMailbox.MeteredQueue> backlogQueues =
+            Collections.newSetFromMap(new ConcurrentHashMap<MeteredMailbox.MeteredQueue, Boolean>());
+
+    // lateness of the delayed messages in nanoseconds, null if the clock doesn't report it
+    private volatile Histogram schedulerLag;
+
+    /**
+     * @param sampling one message in {@code sampling} has its processing time and mailbox depth measured
+     */
+    public Metrics(boolean enabled, int sampling) {
+        if (sampling < 1)
+            throw new IllegalArgumentException(String.format("Illegal sampling [%s]", sampling));
+        this.enabled = enabled;
+        this.sampling = sampling;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSampling() {
+        return sampling;
+    }
+
+    /**
+     * @return processing time histograms of the actor type by message type, created on demand
+     */
+    public ConcurrentMap<Object, Histogram> processing(String actorType) {
+        ConcurrentMap<Object, Histogram> histograms = processing.get(actorType);
+        if (histograms == null) {
+            final ConcurrentMap<Object, Histogram> created = new ConcurrentHashMap<>();
+            histograms = processing.putIfAbsent(actorType, created);
+            if (histograms == null)
+                histograms = created;
+        }
+        return histograms;
+    }
+
+    static Histogram histogram(ConcurrentMap<Object, Histogram> histograms, Object messageType) {
+        Histogram histogram = histograms.get(messageType);
+        if (histogram == null) {
+            final Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(messageType, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return mailbox depth histogram of the actor type, created on demand
+     */
+    public Histogram mailbox(String actorType) {
+        Histogram histogram = mailboxes.get(actorType);
+        if (histogram == null) {
+            final Histogram created = new Histogram();
+            histogram = mailboxes.putIfAbsent(actorType, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return counter of the messages dropped by the bounded mailbox of the given id, created on demand
+     */
+    public AtomicLong dropped(String mailboxId) {
+        AtomicLong counter = dropped.get(mailboxId);
+        if (counter == null) {
+            final AtomicLong created = new AtomicLong();
+            counter = dropped.putIfAbsent(mailboxId, created);
+            if (counter == null)
+                counter = created;
+        }
+        return counter;
+    }
+
+    Set<MeteredMailbox.MeteredQueue> backlogQueues() {
+        return backlogQueues;
+    }
+
+    /**
+     * @return number of messages waiting in the mailboxes with {@code backlog = on}
+     */
+    public long getBacklog() {
+        long backlog = 0;
+        for (MeteredMailbox.MeteredQueue queue : backlogQueues)
+            backlog += queue.numberOfMessages();
+        return backlog;
+    }
+
+    void setSchedulerLag(Histogram schedulerLag) {
+        this.schedulerLag = schedulerLag;
+    }
+
+    @Override
+    public List<Record> getRecords() {
+        final ImmutableList.Builder<Record> records = ImmutableList.builder();
+        for (Map.Entry<String, ConcurrentMap<Object, Histogram>> actor : processing.entrySet()) {
+            for (Map.Entry<Object, Histogram> message : actor.getValue().entrySet()) {
+                final Object type = message.getKey();
+                final String name = type instanceof Class ? ((Class<?>) type).getSimpleName() : type.toString();
+                records.add(Record.of(actor.getKey(), name, "us", message.getValue(), 1000));
+            }
+            final Histogram mailbox = mailboxes.get(actor.getKey());
+            if (mailbox != null)
+                records.add(Record.of(actor.getKey(), MAILBOX, "messages", mailbox, 1));
+        }
+        for (Map.Entry<String, AtomicLong> mailbox : dropped.entrySet())
+            records.add(new Record(mailbox.getKey(), DROPPED, "messages", mailbox.getValue().get(), 0, 0, 0, 0));
+        if (!backlogQueues.isEmpty())
+            records.add(new Record(BACKLOG, "messages", "messages", getBacklog(), 0, 0, 0, 0));
+        final Histogram schedulerLag = this.schedulerLag;
+        if (schedulerLag != null)
+            records.add(Record.of(SCHEDULER, "lateness", "us", schedulerLag, 1000));
+        return records.build();
+    }
+
+    /**
+     * Writes the current records as tab separated lines, all stamped with the given time.
+     */
+    public void export(Writer writer, long time) throws IOException {
+        for (Record record : getRecords())
+            writer.write(String.format("%d\t%s\t%s\t%d\t%.1f\t%.1f\t%.1f\t%.1f\t%s%n", time, record.getActor(),
+                    record.getMessage(), record.getCount(), record.getMean(), record.getMedian(),
+                    record.getPercentile99(), record.getMax(), record.getUnit()));
+        writer.flush();
+    }
+
+    /**
+     * Histogram of one message type of one actor type at the time of reading.
+     */
+    public static class Record {
+
+        private final String actor;
+        private final String message;
+        private final String unit;
+        private final long count;
+        private final double mean;
+        private final double median;
+        private final double percentile99;
+        private final double max;
+
+        @ConstructorProperties({"actor", "message", "unit", "count", "mean", "median", "percentile99", "max"})
+        public Record(String actor, String message, String unit, long count, double mean, double median,
+                      double percentile99, double max) {
+            this.actor = actor;
+            this.message = message;
+            this.unit = unit;
+            this.count = count;
+            this.mean = mean;
+            this.median = median;
+            this.percentile99 = percentile99;
+            this.max = max;
+        }
+
+        static Record of(String actor, String message, String unit, Histogram histogram, double scale) {
+            return new Record(actor, message, unit, histogram.getCount(), histogram.getMean() / scale,
+                    histogram.getPercentile(50) / scale, histogram.getPercentile(99) / scale,
+                    histogram.getMax() / scale);
+        }
+
+        public String getActor() {
+            return actor;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getPercentile99() {
+            return percentile99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: %d, mean %.1f, p50 %.1f, p99 %.1f, max %.1f %s",
+                    actor, message, count, mean, median, percentile99, max, unit);
+        }
+
+    }
+
+}
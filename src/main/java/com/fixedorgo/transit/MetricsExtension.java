@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Provides the {@link Metrics} of an {@link ActorSystem} according to the {@code transit.metrics} settings:
+ * the metrics are registered as an MXBean and appended to the {@code path} file every {@code export-interval}
+ * of wall clock time, each line stamped with the wall clock milliseconds.
+ */
+public class MetricsExtension extends AbstractExtensionId<Metrics> implements ExtensionIdProvider {
+
+    public static final MetricsExtension MetricsProvider = new MetricsExtension();
+
+    // systems of the same name may run side by side, as the replications do
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    public static Metrics metricsOf(ActorSystem system) {
+        return MetricsProvider.get(system);
+    }
+
+    @Override
+    public MetricsExtension lookup() {
+        return MetricsProvider;
+    }
+
+    @Override
+    public Metrics createExtension(final ExtendedActorSystem system) {
+        final Config config = system.settings().config().getConfig("transit.metrics");
+        final Metrics metrics = new Metrics(config.getBoolean("enabled"), config.getInt("sampling"));
+        if (!metrics.isEnabled())
+            return metrics;
+
+        final Clock clock = clockOf(system);
+        if (clock instanceof RealTimeClock && ((RealTimeClock) clock).getTimingWheel() != null)
+            metrics.setSchedulerLag(((RealTimeClock) clock).getTimingWheel().getLatenessHistogram());
+
+        if (config.getBoolean("jmx"))
+            register(system, metrics);
+
+        final String path = config.getString("path");
+        if (!path.isEmpty())
+            export(system, metrics, path, config.getDuration("export-interval", MILLISECONDS));
+        return metrics;
+    }
+
+    private static void register(ActorSystem system, Metrics metrics) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName("com.fixedorgo.transit:type=Metrics,system=" + system.name()
+                    + ",instance=" + instances.incrementAndGet());
+            server.registerMBean(metrics, name);
+            system.registerOnTermination(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        server.unregisterMBean(name);
+                    } catch (JMException e) {
+                        // already gone
+                    }
+                }
+            });
+        } catch (JMException e) {
+            system.log().warning("Unable to register the metrics MXBean: {}", e);
+        }
+    }
+
+    private static void export(final ActorSystem system, final Metrics metrics, final String path, long interval) {
+        final Writer writer;
+        try {
+            writer = new FileWriter(path, true);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Unable to open the metrics file [%s]", path), e);
+        }
+        final Runnable export = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (writer) {
+                        metrics.export(writer, System.currentTimeMillis());
+                    }
+                } catch (IOException e) {
+                    system.log().warning("Unable to export the metrics to [{}]: {}", path, e);
+                }
+            }
+        };
+        final FiniteDuration period = Duration.create(interval, MILLISECONDS);
+        final Cancellable exports = system.scheduler().schedule(period, period, export, system.dispatcher());
+        system.registerOnTermination(new Runnable() {
+            @Override
+            public void run() {
+                exports.cancel();
+                export.run();
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // nothing to do on shutdown
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Schedule of one leg of the Bus movement: the Points of the {@link RouteGeometry} to pass and the simulation time
+ * of reaching each of them. Positions between the Points are interpolated on demand, so the movement itself
+ * needs no events.
+ */
+public class MotionPlan implements Serializable {
+
+    private final LatLng start;
+
+    private final long startTime;
+
+    private final RouteGeometry geometry;
+
+    private final int first;
+
+    private final long[] times;
+
+    private final boolean arrived;
+
+    /**
+     * @param first index in the geometry of the first Point to pass
+     * @param times simulation time of reaching every following Point
+     */
+    public MotionPlan(LatLng start, long startTime, RouteGeometry geometry, int first, long[] times, boolean arrived) {
+        if (first < 0 || first + times.length > geometry.size())
+            throw new IllegalArgumentException("Plan goes beyond the Route geometry");
+        this.start = start;
+        this.startTime = startTime;
+        this.geometry = geometry;
+        this.first = first;
+        this.times = times;
+        this.arrived = arrived;
+    }
+
+    /**
+     * @return location the leg starts from, usually between two Points of the geometry
+     */
+    public LatLng getStart() {
+        return start;
+    }
+
+    public RouteGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return number of Points to pass
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @return index in the geometry of the i-th Point of the plan
+     */
+    public int pointIndex(int i) {
+        return first + i;
+    }
+
+    /**
+     * @return simulation time of reaching the i-th Point of the plan
+     */
+    public long timeAt(int i) {
+        return times[i];
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return simulation time of reaching the last Point of the plan
+     */
+    public long getEndTime() {
+        return times.length > 0 ? times[times.length - 1] : startTime;
+    }
+
+    /**
+     * @return distance of passing all Points of the plan, in meters
+     */
+    public long getDistance() {
+        if (times.length == 0)
+            return 0;
+        return geometry.totalDistance(first + times.length - 1) - (first > 0 ? geometry.totalDistance(first - 1) : 0);
+    }
+
+    /**
+     * @return {@code true} if the plan ends at the destination, {@code false} if the Route geometry ended earlier
+     */
+    public boolean isArrived() {
+        return arrived;
+    }
+
+    /**
+     * @return location at the given simulation time, linearly interpolated between the Points
+     */
+    public LatLng positionAt(long time) {
+        if (times.length == 0 || time <= startTime)
+            return start;
+        if (time >= getEndTime())
+            return geometry.latLng(first + times.length - 1);
+
+        int next = Arrays.binarySearch(times, time);
+        if (next >= 0)
+            return geometry.latLng(first + next);
+        next = -next - 1;
+
+        final double fromLatitude = next > 0 ? geometry.latitude(first + next - 1) : start.getLatitude();
+        final double fromLongitude = next > 0 ? geometry.longitude(first + next - 1) : start.getLongitude();
+        final long fromTime = next > 0 ? times[next - 1] : startTime;
+        final double fraction = (double) (time - fromTime) / (times[next] - fromTime);
+        return new LatLng(fromLatitude + (geometry.latitude(first + next) - fromLatitude) * fraction,
+                fromLongitude + (geometry.longitude(first + next) - fromLongitude) * fraction);
+    }
+
+}
@@ -16,10 +16,10 @@
 package com.fixedorgo.transit;
 
 import akka.actor.ActorRef;
-import akka.actor.UntypedActor;
+import akka.actor.Props;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
-import com.fixedorgo.transit.Tracking.TrackingApi.Track;
+import com.fixedorgo.transit.Tracking.TrackingApi.Passed;
 import com.fixedorgo.transit.Bus.BusApi.Locate;
 import com.fixedorgo.transit.Moving.MovingApi.Load;
 import com.fixedorgo.transit.Moving.MovingApi.MoveTo;
@@ -27,46 +27,84 @@ import com.google.common.collect.Lists;
 import com.javadocmd.simplelatlng.LatLng;
 import org.uncommons.maths.number.NumberGenerator;
 import org.uncommons.maths.random.ContinuousUniformGenerator;
-import org.uncommons.maths.random.MersenneTwisterRNG;
-import scala.concurrent.duration.Duration;
 
 import java.io.Serializable;
 import java.util.List;
 import java.util.Queue;
 
-import static com.fixedorgo.transit.SystemClock.recalculateTime;
+import static com.fixedorgo.transit.ActorRoles.TRACK_MAILBOX;
+import static com.fixedorgo.transit.ActorRoles.sink;
 import static com.fixedorgo.transit.Bus.BusApi.WeAreHere;
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.Moving.MovingApi.GetPosition;
 import static com.fixedorgo.transit.Moving.MovingApi.MoveOn;
 import static com.fixedorgo.transit.Moving.MovingApi.Reached;
-import static com.javadocmd.simplelatlng.LatLngTool.distance;
-import static com.javadocmd.simplelatlng.util.LengthUnit.METER;
+import static com.fixedorgo.transit.Moving.MovingApi.Sample;
+import static com.fixedorgo.transit.RandomExtension.randomOf;
+import static com.fixedorgo.transit.RouteGeometry.ARRIVAL_RADIUS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
-public class Moving extends UntypedActor {
+public class Moving extends MeteredActor {
+
+    static final double MIN_SPEED_FACTOR = 0.9;
+
+    static final double MAX_SPEED_FACTOR = 1.1;
 
     private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
-    private final NumberGenerator<Double> generator = new ContinuousUniformGenerator(0.9, 1.1, new MersenneTwisterRNG());
+    private final Clock clock = clockOf(getContext().system());
+
+    private final NumberGenerator<Double> generator = new ContinuousUniformGenerator(MIN_SPEED_FACTOR, MAX_SPEED_FACTOR,
+            randomOf(getContext().system()).stream(getSelf().path().toStringWithoutAddress()));
+
+    // geometries loaded after the current one
+    private final Queue<RouteGeometry> geometries = Lists.newLinkedList();
+
+    private RouteGeometry geometry;
+
+    // index of the next Point to pass in the current geometry
+    private int cursor;
 
-    private final Queue<Point> routePoints = Lists.newLinkedList();
+    // simulation time between the position samples, zero if positions are reported on demand only
+    private final long sampleInterval = getContext().system().settings().config()
+            .getDuration("transit.moving.sample-interval", MILLISECONDS);
 
     private LatLng destination;
 
+    private LatLng location;
+
+    private MotionPlan plan;
+
+    // distance travelled before the current leg, in meters
+    private long distance;
+
     private ActorRef tracking;
 
+    // symbol of the Bus, the source of the journaled track
+    private final int busId;
+
+    public Moving() {
+        this(Symbols.NONE);
+    }
+
+    public Moving(int busId) {
+        this.busId = busId;
+    }
+
     @Override
     public void preStart() throws Exception {
-        // TODO: Initialize tracking
+        tracking = getContext().actorOf(sink(Props.create(Tracking.class, busId), TRACK_MAILBOX), "tracking");
     }
 
     @Override
-    public void onReceive(Object message) throws Exception {
-        log.debug("Received message [{}]", message);
-
+    protected void onMessage(Object message) throws Exception {
         if (message instanceof Load) {
 
             final Load load = (Load) message;
-            routePoints.addAll(load.routePoints);
+            geometries.add(load.geometry);
+            if (location == null && load.geometry.size() > 0)
+                location = load.geometry.latLng(0);
 
         } else if (message instanceof MoveTo) {
 
@@ -76,28 +114,48 @@ public class Moving extends UntypedActor {
 
         } else if (message.equals(MoveOn)) {
 
-            final Point nextPoint = routePoints.peek(); // take but doesn't remove
-            long duration = (long) (nextPoint.getDuration() * generator.nextValue());
+            // moving simulation itself: the whole leg is planned at once and only the arrival is an event
+            plan = planTo(destination);
+            final long now = clock.currentTimeMillis();
+            clock.scheduleOnce(plan.getEndTime() - now, MILLISECONDS, getSelf(), Reached, ActorRef.noSender());
+            if (sampleInterval > 0 && now + sampleInterval < plan.getEndTime())
+                clock.scheduleOnce(sampleInterval, MILLISECONDS, getSelf(), Sample, ActorRef.noSender());
+
+        } else if (message.equals(Sample)) {
+
+            final long now = clock.currentTimeMillis();
+            getContext().parent().tell(new Locate(plan.positionAt(now)), getSelf());
+            if (now + sampleInterval < plan.getEndTime())
+                clock.scheduleOnce(sampleInterval, MILLISECONDS, getSelf(), Sample, ActorRef.noSender());
+
+        } else if (message.equals(GetPosition)) {
 
-            // moving simulation itself
-            getContext().system().scheduler().scheduleOnce(Duration.create(recalculateTime(duration), SECONDS),
-                    getSelf(), Reached, getContext().dispatcher(), ActorRef.noSender());
+            getSender().tell(new Locate(plan != null ? plan.positionAt(clock.currentTimeMillis()) : location), getSelf());
 
         } else if (message.equals(Reached)) {
 
-            final Point currentPoint = routePoints.poll();
-            final LatLng currentLocation = currentPoint.getLatLng();
+            // in real time the timer comes early if the time scale was lowered after the leg had been planned
+            final long now = clock.currentTimeMillis();
+            if (now < plan.getEndTime()) {
+                clock.scheduleOnce(plan.getEndTime() - now, MILLISECONDS, getSelf(), Reached, ActorRef.noSender());
+                return;
+            }
+
+            location = plan.positionAt(plan.getEndTime());
 
             // tell the Bus about current location
-            getContext().parent().tell(new Locate(currentLocation), getSelf());
+            getContext().parent().tell(new Locate(location), getSelf());
 
             // path tracking activities
-            tracking.tell(new Track(currentPoint), getSelf());
+            tracking.tell(new Passed(plan, distance), getSelf());
+            distance += plan.getDistance();
 
-            if (weArrivedAt(currentLocation))
+            if (plan.isArrived())
                 getContext().parent().tell(WeAreHere, getSelf()); // TODO: Just a stub
+            else if (!geometries.isEmpty())
+                getSelf().tell(MoveOn, ActorRef.noSender()); // continue along the next loaded geometry
             else
-                getSelf().tell(MoveOn, ActorRef.noSender());
+                log.warning("Route is over before reaching the destination [{}]", destination);
 
         } else {
             unhandled(message);
@@ -105,22 +163,49 @@ public class Moving extends UntypedActor {
 
     }
 
-    private boolean weArrivedAt(LatLng location) {
-        double toDestination = distance(destination, location, METER);
-        double fromNextPoint = distance(destination, routePoints.peek().getLatLng(), METER);
-        return toDestination < 10 && toDestination < fromNextPoint;
+    /**
+     * Takes the Points up to the destination and calculates the time of reaching each of them.
+     */
+    private MotionPlan planTo(LatLng destination) {
+        while ((geometry == null || cursor >= geometry.size()) && !geometries.isEmpty()) {
+            geometry = geometries.poll();
+            cursor = 0;
+        }
+        if (geometry == null)
+            throw new IllegalStateException("Route geometry is not loaded");
+        final long startTime = clock.currentTimeMillis();
+
+        final int stop = geometry.stopIndex(cursor, destination, ARRIVAL_RADIUS);
+        final int last = stop >= 0 ? stop : geometry.size() - 1;
+        final long[] times = new long[Math.max(last - cursor + 1, 0)];
+        long time = startTime;
+        for (int i = 0; i < times.length; i++)
+            times[i] = time += (long) (SECONDS.toMillis(geometry.duration(cursor + i)) * generator.nextValue());
+
+        final MotionPlan plan = new MotionPlan(location, startTime, geometry, cursor, times, stop >= 0);
+        cursor = last + 1;
+        return plan;
     }
 
     public static class MovingApi {
 
         public static final Object MoveOn = "Move On";
         public static final Object Reached = "Reached";
+        public static final Object Sample = "Sample";
+        public static final Object GetPosition = "Get Position";
 
+        /**
+         * Route geometry to move along. The geometry should be shared by all Buses of the Route.
+         */
         public static class Load implements Serializable {
-            public final List<Point> routePoints;
+            public final RouteGeometry geometry;
+
+            public Load(RouteGeometry geometry) {
+                this.geometry = geometry;
+            }
 
             public Load(List<Point> routePoints) {
-                this.routePoints = routePoints;
+                this(new RouteGeometry(routePoints));
             }
         }
 
@@ -15,38 +15,70 @@
  */
 package com.fixedorgo.transit;
 
-import java.util.Collections;
-import java.util.List;
-
-import static org.apache.commons.lang3.StringUtils.EMPTY;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Passenger {
 
+    private static final AtomicInteger counter = new AtomicInteger();
+
     // Passenger with id = 0
-    public static final Passenger NONE = new Passenger(EMPTY, EMPTY, Collections.<String>emptyList());
+    public static final Passenger NONE = new Passenger(Symbols.NONE, Symbols.NONE, new BitSet());
 
-    private static int counter = 0;
+    private final int id = counter.getAndIncrement();
 
-    private final int id = counter++;
+    private int origin;
 
-    private String origin;
+    private int destination;
 
-    private String destination;
+    // Route symbols, usually shared by all Passengers of the Station and never modified
+    private BitSet suitableRoutes;
 
-    private List<String> suitableRoutes;
+    private long arrivalTime;
 
-    public Passenger(String origin, String destination, List<String> suitableRoutes) {
+    public Passenger(int origin, int destination, BitSet suitableRoutes) {
+        this(origin, destination, suitableRoutes, 0);
+    }
+
+    /**
+     * @param origin         symbol of the origin Station
+     * @param destination    symbol of the destination Station, {@link Symbols#NONE} if not known
+     * @param suitableRoutes symbols of the suitable Routes
+     * @param arrivalTime    simulation time when the Passenger came to the origin Station
+     */
+    public Passenger(int origin, int destination, BitSet suitableRoutes, long arrivalTime) {
         this.origin = origin;
         this.destination = destination;
         this.suitableRoutes = suitableRoutes;
+        this.arrivalTime = arrivalTime;
     }
 
-    public boolean isSuitable(String routeId) {
-        return suitableRoutes.contains(routeId); // simple case. A Decision Strategy is needed
+    public int getId() {
+        return id;
     }
 
-    public boolean hasDestination(String stationId) {
-        return destination.equals(stationId);
+    public boolean isSuitable(int routeId) {
+        return suitableRoutes.get(routeId); // the Routes are planned by the JourneyPlanner
+    }
+
+    public boolean hasDestination(int stationId) {
+        return destination == stationId;
+    }
+
+    public int getOrigin() {
+        return origin;
+    }
+
+    public int getDestination() {
+        return destination;
+    }
+
+    public BitSet getSuitableRoutes() {
+        return suitableRoutes;
+    }
+
+    public long getArrivalTime() {
+        return arrivalTime;
     }
 
     @Override
@@ -55,6 +87,11 @@ public class Passenger {
                 id == Passenger.class.cast(obj).id;
     }
 
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
     @Override
     public String toString() {
         return String.format("Passenger [%s]", id);
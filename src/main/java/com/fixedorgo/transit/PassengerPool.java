@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Extension;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passengers of the whole network kept in columns of primitive arrays (id, origin, destination, suitable Routes,
+ * arrival time), allocated by chunks. A Passenger is referred to by an int handle, the number of its slot;
+ * Stations and Buses pass the handles around instead of objects.
+ * <p>
+ * The slot of an alighted Passenger is released and reused by the next one, so the pool grows up to the largest
+ * number of Passengers in the network at once and no garbage is left behind. Allocation and release are
+ * thread-safe; the fields of a Passenger are written by its owner only, and the handle is published by a message.
+ * Ids are unique for the lifetime of the pool, unlike handles.
+ */
+public class PassengerPool implements Extension {
+
+    public static final int NO_PASSENGER = -1;
+
+    private static final int CHUNK_SHIFT = 12;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private final AtomicInteger tickets = new AtomicInteger();
+
+    // published after a chunk is added, so readers on other threads see the whole chunk
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    // released slots, the last released is reused first
+    private int[] free = new int[CHUNK_SIZE];
+
+    private int freeCount = 0;
+
+    private int slots = 0;
+
+    /**
+     * @param origin      symbol of the origin Station
+     * @param destination symbol of the destination Station, {@link Symbols#NONE} if not known
+     * @param routes      symbols of the suitable Routes, usually shared with other Passengers (see
+     *                    {@link JourneyPlanner}) and never modified
+     * @param arrivalTime simulation time when the Passenger came to the origin Station
+     * @return handle of the new Passenger
+     */
+    public int allocate(int origin, int destination, BitSet routes, long arrivalTime) {
+        final int handle = slot();
+        final Chunk chunk = chunks[handle >>> CHUNK_SHIFT];
+        final int offset = handle & CHUNK_MASK;
+        chunk.ids[offset] = ids.getAndIncrement();
+        chunk.origins[offset] = origin;
+        chunk.destinations[offset] = destination;
+        chunk.routes[offset] = routes;
+        chunk.arrivalTimes[offset] = arrivalTime;
+        chunk.tickets[offset] = 0;
+        return handle;
+    }
+
+    /**
+     * Passenger continues the journey from the transfer Station by the next Routes.
+     */
+    public void transfer(int handle, int station, BitSet routes, long arrivalTime) {
+        final Chunk chunk = chunk(handle);
+        final int offset = handle & CHUNK_MASK;
+        chunk.origins[offset] = station;
+        chunk.routes[offset] = routes;
+        chunk.arrivalTimes[offset] = arrivalTime;
+    }
+
+    /**
+     * Returns the slot of the Passenger to the pool, the handle must not be used afterwards.
+     */
+    public synchronized void release(int handle) {
+        final Chunk chunk = chunk(handle);
+        if (chunk.routes[handle & CHUNK_MASK] == null)
+            throw new IllegalArgumentException(String.format("Passenger [%s] is already released", handle));
+        chunk.routes[handle & CHUNK_MASK] = null;
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = handle;
+    }
+
+    public int id(int handle) {
+        return chunk(handle).ids[handle & CHUNK_MASK];
+    }
+
+    public int origin(int handle) {
+        return chunk(handle).origins[handle & CHUNK_MASK];
+    }
+
+    public int destination(int handle) {
+        return chunk(handle).destinations[handle & CHUNK_MASK];
+    }
+
+    public BitSet routes(int handle) {
+        return chunk(handle).routes[handle & CHUNK_MASK];
+    }
+
+    public boolean isSuitable(int handle, int routeId) {
+        return routes(handle).get(routeId);
+    }
+
+    public long arrivalTime(int handle) {
+        return chunk(handle).arrivalTimes[handle & CHUNK_MASK];
+    }
+
+    /**
+     * @return ticket of the current wait in a {@link StationQueue}, zero if the Passenger is not waiting
+     */
+    int ticket(int handle) {
+        return chunk(handle).tickets[handle & CHUNK_MASK];
+    }
+
+    /**
+     * Passenger starts waiting, with a ticket unique among all waits in the network.
+     */
+    int await(int handle) {
+        int ticket;
+        do {
+            ticket = tickets.incrementAndGet();
+        } while (ticket == 0);
+        return chunk(handle).tickets[handle & CHUNK_MASK] = ticket;
+    }
+
+    void stopWaiting(int handle) {
+        chunk(handle).tickets[handle & CHUNK_MASK] = 0;
+    }
+
+    /**
+     * @return number of allocated Passengers
+     */
+    public synchronized int size() {
+        return slots - freeCount;
+    }
+
+    /**
+     * @return number of slots, the largest number of Passengers at once rounded up to a chunk
+     */
+    public int capacity() {
+        return chunks.length * CHUNK_SIZE;
+    }
+
+    private synchronized int slot() {
+        if (freeCount > 0)
+            return free[--freeCount];
+        if (slots == capacity()) {
+            final Chunk[] chunks = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+            chunks[chunks.length - 1] = new Chunk();
+            this.chunks = chunks;
+        }
+        return slots++;
+    }
+
+    private Chunk chunk(int handle) {
+        final Chunk[] chunks = this.chunks;
+        if (handle < 0 || handle >>> CHUNK_SHIFT >= chunks.length)
+            throw new IndexOutOfBoundsException(String.format("Passenger [%s] of [%s]",
+                    handle, chunks.length * CHUNK_SIZE));
+        return chunks[handle >>> CHUNK_SHIFT];
+    }
+
+    private static class Chunk {
+        final int[] ids = new int[CHUNK_SIZE];
+        final int[] origins = new int[CHUNK_SIZE];
+        final int[] destinations = new int[CHUNK_SIZE];
+        final BitSet[] routes = new BitSet[CHUNK_SIZE];
+        final long[] arrivalTimes = new long[CHUNK_SIZE];
+        final int[] tickets = new int[CHUNK_SIZE];
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+
+/**
+ * Provides the {@link PassengerPool} shared by all Stations and Buses of an {@link ActorSystem}.
+ */
+public class PassengerPoolExtension extends AbstractExtensionId<PassengerPool> implements ExtensionIdProvider {
+
+    public static final PassengerPoolExtension PassengerPoolProvider = new PassengerPoolExtension();
+
+    public static PassengerPool passengersOf(ActorSystem system) {
+        return PassengerPoolProvider.get(system);
+    }
+
+    @Override
+    public PassengerPoolExtension lookup() {
+        return PassengerPoolProvider;
+    }
+
+    @Override
+    public PassengerPool createExtension(ExtendedActorSystem system) {
+        return new PassengerPool();
+    }
+
+}
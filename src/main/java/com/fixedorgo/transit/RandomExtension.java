@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+
+import java.security.SecureRandom;
+
+/**
+ * Provides the {@link RandomStreams} of an {@link ActorSystem} seeded by {@code transit.random.seed};
+ * with an empty seed the master seed is taken from system entropy and logged, so the run can be repeated.
+ */
+public class RandomExtension extends AbstractExtensionId<RandomStreams> implements ExtensionIdProvider {
+
+    public static final RandomExtension RandomProvider = new RandomExtension();
+
+    public static RandomStreams randomOf(ActorSystem system) {
+        return RandomProvider.get(system);
+    }
+
+    @Override
+    public RandomExtension lookup() {
+        return RandomProvider;
+    }
+
+    @Override
+    public RandomStreams createExtension(ExtendedActorSystem system) {
+        final String seed = system.settings().config().getString("transit.random.seed");
+        if (!seed.isEmpty()) {
+            try {
+                return new RandomStreams(Long.parseLong(seed));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Illegal random seed [%s]", seed), e);
+            }
+        }
+        final RandomStreams streams = new RandomStreams(new SecureRandom().nextLong());
+        system.log().info("Random master seed [{}]", streams.getMasterSeed());
+        return streams;
+    }
+
+}
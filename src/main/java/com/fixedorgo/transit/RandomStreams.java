@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Extension;
+import org.uncommons.maths.random.MersenneTwisterRNG;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Independent, reproducible random number streams derived from a single master seed.
+ * Every stream is identified by a name, usually the path of the actor using it, so the same master seed
+ * gives the same numbers to the same actor regardless of the thread scheduling or the creation order.
+ * <p>
+ * Stream seeds are mixed by SplitMix64, which spreads even neighbouring master seeds and names
+ * over the whole seed space; no system entropy is read after the master seed is known.
+ */
+public class RandomStreams implements Extension {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long masterSeed;
+
+    public RandomStreams(long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    /**
+     * @return new generator of the named stream, always starting from the same state for the same name
+     */
+    public Random stream(String name) {
+        final long seed = mix(masterSeed ^ hash(name));
+        final byte[] bytes = new byte[16];
+        toBytes(mix(seed), bytes, 0);
+        toBytes(mix(seed + GOLDEN_GAMMA), bytes, 8);
+        return new MersenneTwisterRNG(bytes);
+    }
+
+    /**
+     * Master seed of an independent replication, e.g. of a Monte Carlo experiment.
+     */
+    public static long seedOf(long masterSeed, long replication) {
+        return mix(masterSeed + (replication + 1) * GOLDEN_GAMMA);
+    }
+
+    // SplitMix64 finalizer
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8))
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        return hash;
+    }
+
+    private static void toBytes(long value, byte[] bytes, int offset) {
+        for (int i = 0; i < 8; i++)
+            bytes[offset + i] = (byte) (value >>> (56 - 8 * i));
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.Duration;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.fixedorgo.transit.SystemClock.recalculateNanos;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Simulation time follows the wall clock accelerated by {@link SystemClock#setTimeScale(double)}.
+ * Delayed messages go through the {@link TimingWheel} or, if {@code transit.clock.scheduler = akka},
+ * through the Akka scheduler, so this mode is suitable for live demos.
+ */
+public class RealTimeClock implements Clock {
+
+    private final ActorSystem system;
+
+    // the latest time scale change, replaced as a whole so the time is read without a lock
+    private volatile Anchor anchor = new Anchor(System.currentTimeMillis(), 0, SystemClock.getTimeScale());
+
+    // null if the Akka scheduler is used
+    private final TimingWheel wheel;
+
+    public RealTimeClock(ActorSystem system) {
+        this.system = system;
+        SystemClock.register(this);
+        system.registerOnTermination(new Runnable() {
+            @Override
+            public void run() {
+                SystemClock.unregister(RealTimeClock.this);
+            }
+        });
+        final Config config = system.settings().config();
+        final String scheduler = config.getString("transit.clock.scheduler");
+        switch (scheduler) {
+            case "timing-wheel":
+                wheel = new TimingWheel(config.getDuration("transit.clock.tick-duration", NANOSECONDS),
+                        NANOSECONDS, system.name() + "-timing-wheel");
+                system.registerOnTermination(new Runnable() {
+                    @Override
+                    public void run() {
+                        wheel.stop();
+                    }
+                });
+                break;
+            case "akka":
+                wheel = null;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown real-time scheduler [%s]", scheduler));
+        }
+    }
+
+    /**
+     * Lock-free, it is read by every dispatcher thread on every message.
+     */
+    @Override
+    public long currentTimeMillis() {
+        return anchor.simulationTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Applies a new time scale from the given wall clock time on, so the simulation time never jumps.
+     * It is called by {@link SystemClock#setTimeScale(double)}.
+     */
+    synchronized void rebase(long now, double timeScale) {
+        anchor = new Anchor(now, anchor.simulationTime(now), timeScale);
+    }
+
+    @Override
+    public void scheduleOnce(long delay, TimeUnit unit, ActorRef receiver, Object message, ActorRef sender) {
+        final long wallDelay = recalculateNanos(delay, unit);
+        if (wheel != null)
+            wheel.schedule(wallDelay, NANOSECONDS, receiver, message, sender);
+        else
+            system.scheduler().scheduleOnce(Duration.create(wallDelay, NANOSECONDS),
+                    receiver, message, system.dispatcher(), sender);
+    }
+
+    /**
+     * @return the timing wheel of this clock or null if the Akka scheduler is used
+     */
+    public TimingWheel getTimingWheel() {
+        return wheel;
+    }
+
+    /**
+     * Wall and simulation time of a time scale change, the simulation time stays continuous.
+     */
+    private static final class Anchor {
+
+        final long time;
+
+        final long simulationTime;
+
+        final double timeScale;
+
+        Anchor(long time, long simulationTime, double timeScale) {
+            this.time = time;
+            this.simulationTime = simulationTime;
+            this.timeScale = timeScale;
+        }
+
+        long simulationTime(long now) {
+            return simulationTime + Math.round(Math.max(now - time, 0) * timeScale);
+        }
+
+    }
+
+}
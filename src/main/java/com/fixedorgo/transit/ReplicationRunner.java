@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+
+/**
+ * Runs independent replications of a simulation in parallel, one per thread at a time. Replication {@code i}
+ * is seeded by {@link RandomStreams#seedOf(long, long)} of the master seed, so the whole experiment
+ * is reproduced by the master seed whatever the number of threads is.
+ * <p>
+ * Results are folded into {@link RunningStatistics} as the replications finish, and only a couple of
+ * replications per thread are in flight, so the memory does not grow with the number of replications.
+ */
+public class ReplicationRunner {
+
+    public interface Replication {
+
+        /**
+         * @return named results of the replication, NaN for a result the replication has no value of
+         */
+        Map<String, Double> run(long seed) throws Exception;
+
+    }
+
+    private final int threads;
+
+    public ReplicationRunner(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException(String.format("Illegal number of threads [%s]", threads));
+        this.threads = threads;
+    }
+
+    /**
+     * @return statistics of every named result over all replications
+     * @throws ExecutionException if any replication fails, the rest are cancelled
+     */
+    public Map<String, RunningStatistics> run(final Replication replication, int count, long masterSeed)
+            throws InterruptedException, ExecutionException {
+        final Map<String, RunningStatistics> statistics = Maps.newTreeMap();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CompletionService<Map<String, Double>> completion = new ExecutorCompletionService<>(executor);
+            final int inFlight = 2 * threads;
+            int submitted = 0;
+            for (int completed = 0; completed < count; completed++) {
+                while (submitted < count && submitted - completed < inFlight) {
+                    final long seed = RandomStreams.seedOf(masterSeed, submitted++);
+                    completion.submit(new Callable<Map<String, Double>>() {
+                        @Override
+                        public Map<String, Double> call() throws Exception {
+                            return replication.run(seed);
+                        }
+                    });
+                }
+                for (Map.Entry<String, Double> result : completion.take().get().entrySet()) {
+                    if (!statistics.containsKey(result.getKey()))
+                        statistics.put(result.getKey(), new RunningStatistics());
+                    statistics.get(result.getKey()).add(result.getValue());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return statistics;
+    }
+
+    /**
+     * Replications of a synthetic {@link Scenario}, the arguments are
+     * {@code replications routes stations buses arrivalRate hours seed [threads]}.
+     */
+    public static void main(String[] args) throws Exception {
+        final int replications = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int routes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final int stations = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        final int buses = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        final double arrivalRate = args.length > 4 ? Double.parseDouble(args[4]) : 1;
+        final int hours = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+        final long seed = args.length > 6 ? Long.parseLong(args[6]) : 42;
+        final int threads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+
+        // the network is the same for all replications, only the random streams differ
+        final Scenario scenario = Scenario.generate(routes, stations, buses, arrivalRate, seed);
+        final long start = System.nanoTime();
+        final Map<String, RunningStatistics> statistics = new ReplicationRunner(threads)
+                .run(new ScenarioReplication(scenario, HOURS.toMillis(hours)), replications, seed);
+
+        System.out.printf("%d replications on %d threads in %.1f s%n", replications, threads,
+                (System.nanoTime() - start) / 1e9);
+        for (Map.Entry<String, RunningStatistics> result : statistics.entrySet())
+            System.out.printf("%s: %s%n", result.getKey(), result.getValue());
+    }
+
+}
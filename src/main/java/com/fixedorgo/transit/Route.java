@@ -15,55 +15,72 @@
  */
 package com.fixedorgo.transit;
 
-import akka.actor.UntypedActor;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import com.fixedorgo.transit.Bus.BusApi.Ready;
 import com.fixedorgo.transit.Dispatching.DispatchingApi.GetRouteData;
 import com.fixedorgo.transit.Route.RouteApi.RouteData;
-import com.google.common.collect.Lists;
 
 import java.io.Serializable;
-import java.util.List;
-import java.util.Queue;
 
 import static com.fixedorgo.transit.Bus.BusApi.NextStation;
 import static com.fixedorgo.transit.Route.RouteApi.GetNextStation;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
 
-public class Route extends UntypedActor {
+public class Route extends MeteredActor {
 
     private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
-    private String routeId;
+    private final Symbols symbols = symbolsOf(getContext().system());
 
-    private final Queue<String> route = Lists.newLinkedList();
+    private int routeId;
+
+    // Both directions of the Route, resolved once and then walked with a cursor
+    private RouteData routeData;
+
+    private boolean reverse;
+
+    // Station symbols of the current direction and the index of the next one
+    private int[] route = new int[0];
+
+    private int next;
 
     public Route(String routeId) {
-        this.routeId = routeId;
+        this.routeId = symbols.id(routeId);
+    }
+
+    /**
+     * Bulk bootstrap: the Route data is taken from a shared {@link RouteTable}, no Dispatching lookup is made.
+     */
+    public Route(RouteData routeData) {
+        this.routeId = routeData.routeId;
+        this.routeData = routeData;
     }
 
     @Override
     public void preStart() throws Exception {
-        getContext().actorSelection("/user/dispatching").tell(new GetRouteData(routeId, false), getSelf());
+        if (routeData == null)
+            getContext().actorSelection("/user/dispatching").tell(new GetRouteData(routeId, false), getSelf());
+        else
+            start(routeData);
     }
 
     @Override
-    public void onReceive(Object message) throws Exception {
-        log.debug("Received message [{}]", message);
-
+    protected void onMessage(Object message) throws Exception {
         if (message instanceof RouteData) {
 
-            final RouteData routeData = (RouteData) message;
-            routeId = routeData.routeId;
-            route.addAll(routeData.stations);
-            getContext().parent().tell(new Ready(routeId), getSelf()); // TODO: Just a Stub at this time
+            start((RouteData) message);
 
         } else if (message.equals(GetNextStation)) {
 
-            if (!route.isEmpty())
-                getSender().tell(new NextStation(route.poll(), route.isEmpty()), getSelf()); // TODO: Should we mark as final?
-            else
-                getContext().actorSelection("/user/dispatching").tell(new GetRouteData(routeId, true), getSelf());
+            if (next < route.length) {
+                final int station = route[next++];
+                getSender().tell(new NextStation(symbols.name(station), next == route.length), getSelf()); // TODO: Should we mark as final?
+            } else if (routeData != null && routeData.reverseStations != null) {
+                reverse = !reverse;
+                direction();
+            } else
+                log.warning("Route [{}] has no reverse Route", symbols.name(routeId));
 
         } else {
             unhandled(message);
@@ -71,18 +88,43 @@ public class Route extends UntypedActor {
 
     }
 
+    private void start(RouteData routeData) {
+        this.routeData = routeData;
+        reverse = false;
+        direction();
+    }
+
+    private void direction() {
+        routeId = reverse ? routeData.reverseRouteId : routeData.routeId;
+        route = reverse ? routeData.reverseStations : routeData.stations;
+        next = 0;
+        getContext().parent().tell(new Ready(symbols.name(routeId)), getSelf()); // TODO: Just a Stub at this time
+    }
+
     public static class RouteApi {
 
         public static final Object GetNextStation = "Get Next Station";
         public static final Object FinalStation = "Final Station"; // ???
 
+        /**
+         * Route symbol with the symbols of its Stations in order, together with its reverse Route, if any.
+         * The arrays are shared and must not be modified.
+         */
         public static class RouteData implements Serializable {
-            public final String routeId;
-            public final List<String> stations;
+            public final int routeId;
+            public final int[] stations;
+            public final int reverseRouteId;
+            public final int[] reverseStations;
+
+            public RouteData(int routeId, int[] stations) {
+                this(routeId, stations, Symbols.NONE, null);
+            }
 
-            public RouteData(String routeId, List<String> stations) {
+            public RouteData(int routeId, int[] stations, int reverseRouteId, int[] reverseStations) {
                 this.routeId = routeId;
                 this.stations = stations;
+                this.reverseRouteId = reverseRouteId;
+                this.reverseStations = reverseStations;
             }
         }
 
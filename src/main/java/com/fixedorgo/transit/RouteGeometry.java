@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import java.io.Serializable;
+import java.util.List;
+
+import static com.fixedorgo.transit.Geo.planarDistance;
+
+/**
+ * Immutable Points of a Route packed into primitive arrays, with cumulative distance and duration.
+ * It is built once per Route and shared by all Buses of the Route, which only keep an index into it.
+ */
+public final class RouteGeometry implements Serializable {
+
+    /**
+     * Radius around a Station location within which a vehicle stops at the Station, in meters.
+     */
+    public static final double ARRIVAL_RADIUS = 10;
+
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    // distance and duration from the beginning of the Route up to the i-th Point inclusive
+    private final long[] distances;
+
+    private final long[] durations;
+
+    public RouteGeometry(List<Point> points) {
+        final int size = points.size();
+        latitudes = new double[size];
+        longitudes = new double[size];
+        distances = new long[size];
+        durations = new long[size];
+        long distance = 0;
+        long duration = 0;
+        for (int i = 0; i < size; i++) {
+            final Point point = points.get(i);
+            latitudes[i] = point.getLatLng().getLatitude();
+            longitudes[i] = point.getLatLng().getLongitude();
+            distances[i] = distance += point.getDistance();
+            durations[i] = duration += point.getDuration();
+        }
+    }
+
+    /**
+     * @param distances cumulative distances, as in {@link #totalDistance(int)}
+     * @param durations cumulative durations, as in {@link #totalDuration(int)}
+     */
+    RouteGeometry(double[] latitudes, double[] longitudes, long[] distances, long[] durations) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.distances = distances;
+        this.durations = durations;
+    }
+
+    public int size() {
+        return latitudes.length;
+    }
+
+    public double latitude(int i) {
+        return latitudes[i];
+    }
+
+    public double longitude(int i) {
+        return longitudes[i];
+    }
+
+    public LatLng latLng(int i) {
+        return new LatLng(latitudes[i], longitudes[i]);
+    }
+
+    /**
+     * @return distance of the segment which ends at the i-th Point, as in {@link Point#getDistance()}
+     */
+    public long distance(int i) {
+        return i > 0 ? distances[i] - distances[i - 1] : distances[i];
+    }
+
+    /**
+     * @return duration of the segment which ends at the i-th Point, as in {@link Point#getDuration()}
+     */
+    public long duration(int i) {
+        return i > 0 ? durations[i] - durations[i - 1] : durations[i];
+    }
+
+    /**
+     * @return distance from the beginning of the Route up to the i-th Point
+     */
+    public long totalDistance(int i) {
+        return distances[i];
+    }
+
+    /**
+     * @return duration from the beginning of the Route up to the i-th Point
+     */
+    public long totalDuration(int i) {
+        return durations[i];
+    }
+
+    public Point pointAt(int i) {
+        return new Point(distance(i), duration(i), latLng(i));
+    }
+
+    /**
+     * @return approximate distance in meters between the i-th Point and the location
+     */
+    public double distanceTo(int i, LatLng location) {
+        return planarDistance(latitudes[i], longitudes[i], location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Finds the first Point starting from {@code from} where a vehicle stops at the location: the Point
+     * is closer than the radius and the following Point is not closer to the location.
+     *
+     * @return index of the Point or -1 if the Route doesn't pass the location
+     */
+    public int stopIndex(int from, LatLng location, double radius) {
+        for (int i = from; i < latitudes.length; i++) {
+            final double distance = distanceTo(i, location);
+            if (distance < radius && (i + 1 == latitudes.length || distance < distanceTo(i + 1, location)))
+                return i;
+        }
+        return -1;
+    }
+
+}
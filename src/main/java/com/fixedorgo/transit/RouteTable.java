@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.Route.RouteApi.RouteData;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable Route table: Station symbols of every Route with its reverse Route, frozen once at load time
+ * and shared between {@link Dispatching} and the {@link Route} actors. The {@link RouteData} of every
+ * Route carries both directions, so a Route actor walks the whole forward and reverse cycle with an
+ * index cursor after a single lookup.
+ */
+public final class RouteTable implements Serializable {
+
+    private final RouteData[] routes;
+
+    private final int size;
+
+    RouteTable(RouteData[] routes, int size) {
+        this.routes = routes;
+        this.size = size;
+    }
+
+    /**
+     * @param stations      Stations of every Route including the reverse ones
+     * @param reverseRoutes reverse Route of every Route
+     * @param symbols       symbol table to intern Route and Station ids into
+     */
+    public static RouteTable create(Map<String, List<String>> stations, Map<String, String> reverseRoutes,
+                                    Symbols symbols) {
+        int[][] routeStations = new int[0][];
+        for (Map.Entry<String, List<String>> route : stations.entrySet()) {
+            final int[] symbolsOfStations = new int[route.getValue().size()];
+            for (int i = 0; i < symbolsOfStations.length; i++)
+                symbolsOfStations[i] = symbols.id(route.getValue().get(i));
+            final int routeId = symbols.id(route.getKey());
+            if (routeId >= routeStations.length)
+                routeStations = Arrays.copyOf(routeStations, Math.max(routeStations.length * 2, routeId + 1));
+            routeStations[routeId] = symbolsOfStations;
+        }
+        final RouteData[] routes = new RouteData[routeStations.length];
+        for (int routeId = 0; routeId < routeStations.length; routeId++) {
+            if (routeStations[routeId] == null)
+                continue;
+            final String reverseRoute = reverseRoutes.get(symbols.name(routeId));
+            final int reverseRouteId = reverseRoute == null ? Symbols.NONE : symbols.id(reverseRoute);
+            final int[] reverseStations = reverseRouteId < routeStations.length ? routeStations[reverseRouteId] : null;
+            if (reverseRouteId != Symbols.NONE && reverseStations == null)
+                throw new IllegalArgumentException(String.format("Unable to find Stations for reverse Route [%s]",
+                        reverseRoute));
+            routes[routeId] = new RouteData(routeId, routeStations[routeId], reverseRouteId, reverseStations);
+        }
+        return new RouteTable(routes, stations.size());
+    }
+
+    /**
+     * @return Route data with both directions, shared and never modified
+     */
+    public RouteData routeData(int routeId) {
+        if (!contains(routeId))
+            throw new IllegalArgumentException(String.format("Unable to find Stations for Route [%s]", routeId));
+        return routes[routeId];
+    }
+
+    /**
+     * @return Station symbols of the Route in order, the array is shared and must not be modified
+     */
+    public int[] stations(int routeId) {
+        return routeData(routeId).stations;
+    }
+
+    /**
+     * @return reverse Route symbol or {@link Symbols#NONE} if the Route has none
+     */
+    public int reverseRoute(int routeId) {
+        return routeData(routeId).reverseRouteId;
+    }
+
+    public boolean contains(int routeId) {
+        return routeId >= 0 && routeId < routes.length && routes[routeId] != null;
+    }
+
+    /**
+     * @return Route symbols in the table, including the reverse Routes
+     */
+    public int[] routes() {
+        final int[] result = new int[size];
+        int i = 0;
+        for (RouteData route : routes)
+            if (route != null)
+                result[i++] = route.routeId;
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+/**
+ * Count, mean, variance and range of a series of values, updated in constant memory by Welford's method.
+ * NaN values are missing results: they are only counted and don't affect the statistics.
+ */
+public class RunningStatistics {
+
+    private long count;
+
+    private long missing;
+
+    private double mean;
+
+    private double squares; // sum of squared deviations from the mean
+
+    private double min = Double.NaN;
+
+    private double max = Double.NaN;
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            missing++;
+            return;
+        }
+        count++;
+        final double delta = value - mean;
+        mean += delta / count;
+        squares += delta * (value - mean);
+        min = count == 1 ? value : Math.min(min, value);
+        max = count == 1 ? value : Math.max(max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of NaN values, which are not counted in {@link #getCount()}
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return mean value or NaN if there were no values
+     */
+    public double getMean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * @return sample variance or NaN for less than two values
+     */
+    public double getVariance() {
+        return count > 1 ? squares / (count - 1) : Double.NaN;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return half-width of the 95% confidence interval of the mean, by the normal approximation
+     */
+    public double getConfidence() {
+        return 1.96 * getStandardDeviation() / Math.sqrt(count);
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3f +/- %.3f (n = %d, sd = %.3f, min = %.3f, max = %.3f%s)",
+                getMean(), getConfidence(), count, getStandardDeviation(), min, max,
+                missing > 0 ? ", missing = " + missing : "");
+    }
+
+}
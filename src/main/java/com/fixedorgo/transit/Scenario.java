@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.javadocmd.simplelatlng.LatLng;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.fixedorgo.transit.Geo.planarDistance;
+
+/**
+ * Synthetic city network: Stations on a square grid, Routes as random walks over the grid with their reverse
+ * Routes, Route geometries and Buses spread over the Routes. The same seed gives the same network.
+ */
+public class Scenario {
+
+    private static final LatLng CENTER = new LatLng(53.9, 27.55);
+
+    private static final double STATION_SPACING = 0.004; // degrees, about 400 meters
+
+    private static final double POINT_SPACING = 20; // meters
+
+    private static final double BUS_SPEED = 8; // meters per second
+
+    private final List<StationData> stationData;
+
+    private final Map<String, LatLng> locations;
+
+    private final Map<String, List<String>> stations;
+
+    private final Map<String, String> reverseRoutes;
+
+    private final Map<String, RouteGeometry> geometries;
+
+    private final List<String> busRoutes;
+
+    private final double arrivalRate;
+
+    private Scenario(List<StationData> stationData, Map<String, List<String>> stations,
+                     Map<String, String> reverseRoutes, Map<String, RouteGeometry> geometries,
+                     List<String> busRoutes, double arrivalRate) {
+        this.stationData = stationData;
+        final ImmutableMap.Builder<String, LatLng> locations = ImmutableMap.builder();
+        for (StationData station : stationData)
+            locations.put(station.id, station.location);
+        this.locations = locations.build();
+        this.stations = stations;
+        this.reverseRoutes = reverseRoutes;
+        this.geometries = geometries;
+        this.busRoutes = busRoutes;
+        this.arrivalRate = arrivalRate;
+    }
+
+    /**
+     * Every Route passes about twice the square root of the number of Stations, and has a reverse Route.
+     *
+     * @param routes      number of Routes, not counting the reverse ones
+     * @param stations    number of Stations
+     * @param buses       number of Buses
+     * @param arrivalRate Passengers per minute at every Station
+     */
+    public static Scenario generate(int routes, int stations, int buses, double arrivalRate, long seed) {
+        if (routes < 1 || stations < 2 || buses < 0)
+            throw new IllegalArgumentException(String.format("Illegal scenario of [%s] Routes, [%s] Stations " +
+                    "and [%s] Buses", routes, stations, buses));
+        final Random random = new Random(seed);
+        final int side = (int) Math.ceil(Math.sqrt(stations));
+
+        final ImmutableList.Builder<StationData> stationData = ImmutableList.builder();
+        final StationData[] grid = new StationData[stations];
+        for (int i = 0; i < stations; i++) {
+            final LatLng location = new LatLng(CENTER.getLatitude() + (i / side) * STATION_SPACING,
+                    CENTER.getLongitude() + (i % side) * STATION_SPACING);
+            stationData.add(grid[i] = new StationData("station-" + i, "Station " + i, location));
+        }
+
+        final int stationsPerRoute = Math.max(2, Math.min(stations, (int) Math.round(2 * Math.sqrt(stations))));
+        final ImmutableMap.Builder<String, List<String>> routeStations = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, String> reverseRoutes = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, RouteGeometry> geometries = ImmutableMap.builder();
+        final ImmutableList.Builder<String> routeIds = ImmutableList.builder();
+        for (int i = 0; i < routes; i++) {
+            final List<StationData> walk = walk(grid, side, stationsPerRoute, random);
+            final List<String> forward = Lists.newArrayListWithCapacity(walk.size());
+            for (StationData station : walk)
+                forward.add(station.id);
+            final String routeId = "route-" + i;
+            final String reverseId = routeId + "-back";
+            routeStations.put(routeId, ImmutableList.copyOf(forward));
+            routeStations.put(reverseId, ImmutableList.copyOf(Lists.reverse(forward)));
+            reverseRoutes.put(routeId, reverseId);
+            reverseRoutes.put(reverseId, routeId);
+            geometries.put(routeId, geometry(walk));
+            geometries.put(reverseId, geometry(Lists.reverse(walk)));
+            routeIds.add(routeId);
+        }
+
+        final List<String> forwardRoutes = routeIds.build();
+        final ImmutableList.Builder<String> busRoutes = ImmutableList.builder();
+        for (int i = 0; i < buses; i++)
+            busRoutes.add(forwardRoutes.get(i % forwardRoutes.size()));
+
+        return new Scenario(stationData.build(), routeStations.build(), reverseRoutes.build(),
+                geometries.build(), busRoutes.build(), arrivalRate);
+    }
+
+    public List<StationData> getStationData() {
+        return stationData;
+    }
+
+    public LatLng getLocation(String stationId) {
+        return locations.get(stationId);
+    }
+
+    /**
+     * @return location of every Station by its id
+     */
+    public Map<String, LatLng> getLocations() {
+        return locations;
+    }
+
+    /**
+     * @return Stations of every Route, including the reverse ones, as expected by {@link Dispatching}
+     */
+    public Map<String, List<String>> getStations() {
+        return stations;
+    }
+
+    public Map<String, String> getReverseRoutes() {
+        return reverseRoutes;
+    }
+
+    public Map<String, RouteGeometry> getGeometries() {
+        return geometries;
+    }
+
+    /**
+     * @return starting Route of every Bus
+     */
+    public List<String> getBusRoutes() {
+        return busRoutes;
+    }
+
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    private static List<StationData> walk(StationData[] grid, int side, int length, Random random) {
+        final List<StationData> walk = Lists.newArrayList();
+        final Set<Integer> visited = Sets.newHashSet();
+        int current = random.nextInt(grid.length);
+        while (walk.size() < length) {
+            walk.add(grid[current]);
+            visited.add(current);
+            final List<Integer> next = Lists.newArrayListWithCapacity(4);
+            final int row = current / side;
+            final int column = current % side;
+            if (row > 0) next.add(current - side);
+            if (row < side - 1 && current + side < grid.length) next.add(current + side);
+            if (column > 0) next.add(current - 1);
+            if (column < side - 1 && current + 1 < grid.length) next.add(current + 1);
+            next.removeAll(visited);
+            if (next.isEmpty())
+                break;
+            current = next.get(random.nextInt(next.size()));
+        }
+        return walk;
+    }
+
+    /**
+     * Straight segments between the Stations with Points every {@link #POINT_SPACING} meters,
+     * every Station being a Point itself.
+     */
+    private static RouteGeometry geometry(List<StationData> walk) {
+        final List<Point> points = Lists.newArrayList();
+        points.add(new Point(0, 0, walk.get(0).location));
+        for (int i = 1; i < walk.size(); i++) {
+            final LatLng from = walk.get(i - 1).location;
+            final LatLng to = walk.get(i).location;
+            final double length = planarDistance(from.getLatitude(), from.getLongitude(),
+                    to.getLatitude(), to.getLongitude());
+            final int segments = Math.max(1, (int) Math.ceil(length / POINT_SPACING));
+            for (int j = 1; j <= segments; j++) {
+                final double fraction = (double) j / segments;
+                final LatLng location = j == segments ? to : new LatLng(
+                        from.getLatitude() + (to.getLatitude() - from.getLatitude()) * fraction,
+                        from.getLongitude() + (to.getLongitude() - from.getLongitude()) * fraction);
+                points.add(new Point(Math.round(length / segments),
+                        Math.round(length / segments / BUS_SPEED), location));
+            }
+        }
+        return new RouteGeometry(points);
+    }
+
+}
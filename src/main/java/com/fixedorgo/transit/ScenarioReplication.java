@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.DepartureData.DepartureApi.Headways;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One replication of a {@link Scenario}: a fresh virtual-time {@link Simulation} seeded by the replication seed.
+ * Reports the processed events, the number of headways between the departures from the first Station
+ * of every Route and the mean of these headways.
+ */
+public class ScenarioReplication implements ReplicationRunner.Replication {
+
+    private final Scenario scenario;
+
+    private final long duration;
+
+    private final Config config;
+
+    /**
+     * @param duration simulation time of every replication, milliseconds
+     */
+    public ScenarioReplication(Scenario scenario, long duration) {
+        this(scenario, duration, ConfigFactory.load("virtual-time"));
+    }
+
+    public ScenarioReplication(Scenario scenario, long duration, Config config) {
+        this.scenario = scenario;
+        this.duration = duration;
+        this.config = config;
+    }
+
+    @Override
+    public Map<String, Double> run(long seed) {
+        final Simulation simulation = new Simulation(scenario,
+                ConfigFactory.parseString("transit.random.seed = " + seed).withFallback(config));
+        try {
+            simulation.run(duration);
+
+            long headways = 0;
+            long headwayTime = 0;
+            for (Map.Entry<String, List<String>> route : scenario.getStations().entrySet()) {
+                final Headways series = simulation.headways(route.getValue().get(0), route.getKey(), 0, duration);
+                for (long headway : series.headways)
+                    headwayTime += headway;
+                headways += series.headways.length;
+            }
+            return ImmutableMap.of(
+                    "events", (double) simulation.processedEvents(),
+                    "headways", (double) headways,
+                    "mean headway, s", headways > 0 ? headwayTime / 1000.0 / headways : Double.NaN);
+        } finally {
+            simulation.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import com.fixedorgo.transit.Bus.BusApi.Alighting;
+import com.fixedorgo.transit.DepartureData.DepartureApi.SetDepartureFor;
+import com.fixedorgo.transit.Moving.MovingApi.Load;
+import com.fixedorgo.transit.Moving.MovingApi.MoveTo;
+import com.fixedorgo.transit.Station.StationApi.AlightingGroup;
+import com.fixedorgo.transit.Station.StationApi.Arrived;
+import com.fixedorgo.transit.Station.StationApi.Boarding;
+import com.fixedorgo.transit.Station.StationApi.BoardingGroup;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.fixedorgo.transit.ActorRoles.simulation;
+import static com.fixedorgo.transit.Bus.BusApi.WeAreHere;
+import static com.fixedorgo.transit.PassengerPoolExtension.passengersOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+
+/**
+ * Simplified vehicle of the synthetic {@link Scenario}: shuttles along its Route and the reverse one,
+ * stopping at every Station for alighting and boarding. Each Passenger leaves at the Station planned
+ * by the {@link JourneyPlanner}: the destination or the transfer to the next Route.
+ */
+public class Shuttle extends MeteredActor {
+
+    private final Symbols symbols = symbolsOf(getContext().system());
+
+    private final int id;
+
+    private final int capacity;
+
+    private final long boardingTime;
+
+    private final Map<String, ActorRef> stations;
+
+    private final ActorRef departures;
+
+    private final Scenario scenario;
+
+    private final PassengerPool passengers = passengersOf(getContext().system());
+
+    private final JourneyPlanner planner;
+
+    // handles of the Passengers on board with the symbol of the Station to leave at
+    private final int[] onBoard;
+
+    private final int[] leaveAt;
+
+    private int load;
+
+    private ActorRef moving;
+
+    private String routeId;
+
+    private int routeSymbol;
+
+    private List<String> routeStations;
+
+    private int index;
+
+    private int station;
+
+    private boolean alighted;
+
+    public Shuttle(String id, String routeId, int capacity, long boardingTime, Map<String, ActorRef> stations,
+                   ActorRef departures, Scenario scenario, JourneyPlanner planner) {
+        this.id = symbols.id(id);
+        this.routeId = routeId;
+        this.routeSymbol = symbols.id(routeId);
+        this.capacity = capacity;
+        this.onBoard = new int[capacity];
+        this.leaveAt = new int[capacity];
+        this.boardingTime = boardingTime;
+        this.stations = stations;
+        this.departures = departures;
+        this.scenario = scenario;
+        this.planner = planner;
+        this.routeStations = scenario.getStations().get(routeId);
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        moving = getContext().actorOf(simulation(Props.create(Moving.class, id)), "moving");
+        moving.tell(new Load(scenario.getGeometries().get(routeId)), getSelf());
+        arrive();
+    }
+
+    @Override
+    protected void onMessage(Object message) throws Exception {
+
+        if (message.equals(WeAreHere)) {
+
+            arrive();
+
+        } else if (message instanceof Alighting) {
+
+            if (!alighted) {
+                alighted = true;
+                getSender().tell(new AlightingGroup(alight()), getSelf());
+            } else {
+                getSender().tell(new Boarding(routeSymbol, boardingTime, capacity - load), getSelf());
+            }
+
+        } else if (message instanceof BoardingGroup) {
+
+            final BoardingGroup boarding = (BoardingGroup) message;
+            for (int passenger : boarding.passengers) {
+                onBoard[load] = passenger;
+                leaveAt[load++] = planner.transfer(station, passengers.destination(passenger));
+            }
+            departures.tell(new SetDepartureFor(station, routeSymbol), getSelf());
+            moveOn();
+
+        } else if (message instanceof Bus.BusApi.Locate) {
+
+            // positions are not used by the shuttle
+
+        } else {
+            unhandled(message);
+        }
+
+    }
+
+    private void arrive() {
+        if (index == routeStations.size() - 1) {
+            // terminal Station: it is the first one of the reverse Route
+            routeId = scenario.getReverseRoutes().get(routeId);
+            routeSymbol = symbols.id(routeId);
+            routeStations = scenario.getStations().get(routeId);
+            moving.tell(new Load(scenario.getGeometries().get(routeId)), getSelf());
+            index = 0;
+        }
+        station = symbols.id(routeStations.get(index));
+        alighted = false;
+        stations.get(routeStations.get(index)).tell(new Arrived(id, routeSymbol), getSelf());
+    }
+
+    private int[] alight() {
+        int leaving = 0;
+        for (int i = 0; i < load; i++)
+            if (leaveAt[i] == station)
+                leaving++;
+        final int[] passengers = new int[leaving];
+        int kept = 0;
+        leaving = 0;
+        for (int i = 0; i < load; i++) {
+            if (leaveAt[i] == station) {
+                passengers[leaving++] = onBoard[i];
+            } else {
+                onBoard[kept] = onBoard[i];
+                leaveAt[kept++] = leaveAt[i];
+            }
+        }
+        load = kept;
+        return passengers;
+    }
+
+    private void moveOn() {
+        index++;
+        moving.tell(new MoveTo(scenario.getLocation(routeStations.get(index))), getSelf());
+    }
+
+}
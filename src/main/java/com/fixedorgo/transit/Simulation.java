@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Inbox;
+import akka.actor.Props;
+import com.fixedorgo.transit.DepartureData.DepartureApi.GetHeadways;
+import com.fixedorgo.transit.DepartureData.DepartureApi.Headways;
+import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.fixedorgo.transit.ActorRoles.DEPARTURE_MAILBOX;
+import static com.fixedorgo.transit.ActorRoles.simulation;
+import static com.fixedorgo.transit.ActorRoles.sink;
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Headless simulation of a {@link Scenario} in virtual time: Dispatching, DepartureData, Stations and
+ * Shuttles in one Actor System, driven by {@link #run(long)} as fast as the events can be processed.
+ */
+public class Simulation {
+
+    private static final FiniteDuration TIMEOUT = Duration.create(10, SECONDS);
+
+    public static final int BUS_CAPACITY = 80;
+
+    public static final long BOARDING_TIME = 2000; // milliseconds per Passenger
+
+    private final ActorSystem system;
+
+    private final VirtualClock clock;
+
+    private final ActorRef departures;
+
+    private final Inbox inbox;
+
+    private final Symbols symbols;
+
+    public Simulation(Scenario scenario) {
+        this(scenario, ConfigFactory.load("virtual-time"));
+    }
+
+    /**
+     * @param config configuration of the virtual clock, see {@code virtual-time.conf}
+     */
+    public Simulation(Scenario scenario, Config config) {
+        system = ActorSystem.create("transit", config);
+        final Clock clock = clockOf(system);
+        if (!(clock instanceof VirtualClock)) {
+            system.shutdown();
+            throw new IllegalArgumentException(String.format("Simulation needs the virtual clock, not [%s]",
+                    config.getString("transit.clock.mode")));
+        }
+        this.clock = (VirtualClock) clock;
+
+        symbols = symbolsOf(system);
+        final RouteTable routeTable = RouteTable.create(scenario.getStations(), scenario.getReverseRoutes(), symbols);
+        system.actorOf(simulation(Props.create(Dispatching.class, routeTable)), "dispatching");
+        departures = system.actorOf(sink(Props.create(DepartureData.class), DEPARTURE_MAILBOX), "departures");
+        inbox = Inbox.create(system);
+
+        final JourneyPlanner planner = new JourneyPlanner(scenario.getStations(), symbols);
+        final ImmutableMap.Builder<String, ActorRef> stations = ImmutableMap.builder();
+        for (StationData station : scenario.getStationData())
+            stations.put(station.id, system.actorOf(simulation(Props.create(Station.class, station.id, station.name,
+                    station.location, scenario.getArrivalRate(), planner)), station.id));
+        final Map<String, ActorRef> stationRefs = stations.build();
+
+        final List<String> busRoutes = scenario.getBusRoutes();
+        final String engine = system.settings().config().getString("transit.fleet.engine");
+        switch (engine) {
+            case "actors":
+                for (int i = 0; i < busRoutes.size(); i++) {
+                    final String busId = "bus-" + i;
+                    system.actorOf(simulation(Props.create(Shuttle.class, busId, busRoutes.get(i), BUS_CAPACITY,
+                            BOARDING_TIME, stationRefs, departures, scenario, planner)), busId);
+                }
+                break;
+            case "kernel":
+                system.actorOf(simulation(Props.create(Fleet.class, busRoutes, BUS_CAPACITY, BOARDING_TIME,
+                        stationRefs, departures, scenario, routeTable, planner)), "fleet");
+                break;
+            default:
+                system.shutdown();
+                throw new IllegalArgumentException(String.format("Unknown fleet engine [%s]", engine));
+        }
+    }
+
+    /**
+     * Processes all events up to the given simulation time.
+     *
+     * @return number of processed events
+     */
+    public long run(long until) {
+        return clock.run(until);
+    }
+
+    public long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    public long processedEvents() {
+        return clock.processedEvents();
+    }
+
+    /**
+     * Headways of the Route departures from the Station within {@code [from, to)} of simulation time.
+     */
+    public Headways headways(String stationId, String routeId, long from, long to) {
+        inbox.send(departures, new GetHeadways(symbols.id(stationId), symbols.id(routeId), from, to));
+        return (Headways) inbox.receive(TIMEOUT);
+    }
+
+    public ActorSystem getSystem() {
+        return system;
+    }
+
+    public void shutdown() {
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+}
@@ -16,40 +16,41 @@
 package com.fixedorgo.transit;
 
 import akka.actor.ActorRef;
-import akka.actor.UntypedActor;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
+import com.fixedorgo.transit.Station.StationApi.AlightingGroup;
 import com.fixedorgo.transit.Station.StationApi.Arrived;
 import com.fixedorgo.transit.Station.StationApi.Boarding;
+import com.fixedorgo.transit.Station.StationApi.BoardingGroup;
 import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.fixedorgo.transit.Station.StationApi.Stopped;
 import com.fixedorgo.transit.Station.StationApi.ToAlight;
-import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import com.javadocmd.simplelatlng.LatLng;
 import org.uncommons.maths.number.NumberGenerator;
 import org.uncommons.maths.random.ExponentialGenerator;
-import org.uncommons.maths.random.MersenneTwisterRNG;
-import scala.concurrent.duration.Duration;
 
 import java.io.Serializable;
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
 
-import static com.fixedorgo.transit.SystemClock.recalculateTime;
 import static com.fixedorgo.transit.Bus.BusApi.Alighting;
-import static com.fixedorgo.transit.Bus.BusApi.ToBoard;
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.JournalExtension.journalOf;
+import static com.fixedorgo.transit.PassengerPoolExtension.passengersOf;
+import static com.fixedorgo.transit.RandomExtension.randomOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
 import static com.fixedorgo.transit.Station.StationApi.Data;
 import static com.fixedorgo.transit.Station.StationApi.PassengerHasArrived;
-import static com.google.common.collect.Iterables.tryFind;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.commons.lang3.time.DateUtils.MILLIS_PER_MINUTE;
 import static org.apache.commons.lang3.time.DateUtils.MILLIS_PER_SECOND;
 
-public class Station extends UntypedActor {
+public class Station extends MeteredActor {
 
-    private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+    private final Clock clock = clockOf(getContext().system());
+
+    private final Journal journal = journalOf(getContext().system());
+
+    private final int symbol;
 
     private final String id;
 
@@ -59,68 +60,105 @@ public class Station extends UntypedActor {
 
     private double arrivalRate;
 
-    private final List<Passenger> stationQueue = Lists.newLinkedList();
+    private final PassengerPool passengers = passengersOf(getContext().system());
+
+    private final StationQueue stationQueue = new StationQueue(passengers);
 
-    private final Set<String> currentlyServe = Sets.newHashSet();
+    private final BitSet currentlyServe = new BitSet();
+
+    // Routes of the new Passengers, shared by all of them until another Route comes
+    private BitSet suitableRoutes = new BitSet();
 
     private long initialDelay = 10 * MILLIS_PER_SECOND; // Just example ???
 
-    private NumberGenerator<Double> generator = new ExponentialGenerator(arrivalRate, new MersenneTwisterRNG());
+    private final Random random;
+
+    private final NumberGenerator<Double> generator;
+
+    // Routes and transfers of the Passengers by their destinations, if any
+    private final JourneyPlanner planner;
+
+    // Passengers are sampled on demand, when a Bus comes, instead of a timer for every Passenger
+    private final boolean lazyArrivals =
+            "lazy".equals(getContext().system().settings().config().getString("transit.station.arrivals"));
+
+    // simulation time of the next Passenger arriving in the lazy mode
+    private long nextArrival = initialDelay;
 
     public Station(String id, String name, LatLng location, double arrivalRate) {
+        this(id, name, location, arrivalRate, null);
+    }
+
+    /**
+     * @param planner journeys of the Passengers, who get random destinations and take the Routes planned
+     *                for them; without a planner the Passengers take any Route serving the Station
+     */
+    public Station(String id, String name, LatLng location, double arrivalRate, JourneyPlanner planner) {
         this.id = id;
         this.name = name;
         this.location = location;
         this.arrivalRate = arrivalRate;
+        this.planner = planner;
+        this.symbol = symbolsOf(getContext().system()).id(id);
+        this.random = randomOf(getContext().system()).stream(getSelf().path().toStringWithoutAddress());
+        this.generator = new ExponentialGenerator(arrivalRate, random);
     }
 
     @Override
     public void preStart() throws Exception {
         // schedule first passenger arriving
-        context().system().scheduler().scheduleOnce(Duration.create(recalculateTime(initialDelay), MILLISECONDS),
-                getSelf(), PassengerHasArrived, getContext().dispatcher(), ActorRef.noSender());
+        if (!lazyArrivals)
+            clock.scheduleOnce(initialDelay, MILLISECONDS, getSelf(), PassengerHasArrived, ActorRef.noSender());
     }
 
     @Override
-    public void onReceive(Object message) throws Exception {
-
-        log.debug("Received message [{}]", message);
+    protected void onMessage(Object message) throws Exception {
 
         if (message.equals(PassengerHasArrived)) {
             // send another periodic passenger after the specified delay
-            context().system().scheduler().scheduleOnce(Duration.create(recalculateTime(interval()), MILLISECONDS),
-                    getSelf(), PassengerHasArrived, getContext().dispatcher(), ActorRef.noSender());
+            clock.scheduleOnce(interval(), MILLISECONDS, getSelf(), PassengerHasArrived, ActorRef.noSender());
 
             // First: if necessary bus already on station passenger goes to boarding
             // Second: if there are no buses passenger should be added to Station queue
-            stationQueue.add(new Passenger("", "", Lists.newArrayList("", ""))); // TODO: Add Passenger generator
+            arrive(newPassenger(clock.currentTimeMillis()));
 
         } else if (message instanceof Arrived) {
 
-            final Arrived arrived = (Arrived) message;
-            currentlyServe.add(arrived.routeId); // TODO: Add some statistics here?
+            serve(((Arrived) message).routeId);
+            sampleArrivals();
             getSender().tell(new Alighting(id), getSelf());
 
         } else if (message instanceof ToAlight) {
 
             final ToAlight toAlight = (ToAlight) message;
-            Passenger passenger = toAlight.passenger; // TODO: Where should go this Passenger?
+            leave(toAlight.passenger);
+            journal.alighting(clock.currentTimeMillis(), symbol, 1);
+            getSender().tell(new Alighting(id), getSelf());
+
+        } else if (message instanceof AlightingGroup) {
+
+            final AlightingGroup alighting = (AlightingGroup) message;
+            for (int passenger : alighting.passengers)
+                leave(passenger);
+            journal.alighting(clock.currentTimeMillis(), symbol, alighting.passengers.length);
             getSender().tell(new Alighting(id), getSelf());
 
         } else if (message instanceof Boarding) {
 
             final Boarding boarding = (Boarding) message;
-            Optional<Passenger> candidate = tryFind(stationQueue, toBoard(boarding.routeId));
-            if (candidate.isPresent()) {
-                Passenger passenger = candidate.get();
-                stationQueue.remove(passenger);
-
-                // Simulate the boarding time
-                context().system().scheduler().scheduleOnce(Duration.create(recalculateTime(boarding.time), MILLISECONDS),
-                        getSender(), new ToBoard(passenger), getContext().dispatcher(), getSelf());
-            } else {
-                getSender().tell(new ToBoard(Passenger.NONE), getSelf()); // TODO: Replace by scheduleOnce() ???
-            }
+            sampleArrivals();
+            board(boarding.busId, boarding.routeId, boarding.time, boarding.load);
+
+        } else if (message instanceof Stopped) {
+
+            final Stopped stopped = (Stopped) message;
+            serve(stopped.routeId);
+            sampleArrivals();
+            for (int passenger : stopped.alighting)
+                leave(passenger);
+            if (stopped.alighting.length > 0)
+                journal.alighting(clock.currentTimeMillis(), symbol, stopped.alighting.length);
+            board(stopped.busId, stopped.routeId, stopped.time, stopped.load);
 
         } else if (message.equals(Data)) {
 
@@ -133,17 +171,73 @@ public class Station extends UntypedActor {
 
     }
 
+    private void serve(int routeId) {
+        if (!currentlyServe.get(routeId)) { // TODO: Add some statistics here?
+            currentlyServe.set(routeId);
+            suitableRoutes = (BitSet) currentlyServe.clone();
+        }
+    }
+
+    private void board(int busId, int routeId, long time, int load) {
+        final int[] boarded = stationQueue.poll(routeId, load);
+        if (boarded.length > 0) {
+            journal.boarding(clock.currentTimeMillis(), symbol, routeId, boarded.length);
+
+            // Simulate the boarding time of the whole group by a single timer
+            clock.scheduleOnce(time * boarded.length, MILLISECONDS,
+                    getSender(), new BoardingGroup(busId, boarded), getSelf());
+        } else {
+            getSender().tell(new BoardingGroup(busId, boarded), getSelf());
+        }
+    }
+
     private long interval() {
         return Math.round(generator.nextValue() * MILLIS_PER_MINUTE);
     }
 
-    private Predicate<Passenger> toBoard(final String routeId) {
-        return new Predicate<Passenger>() {
-            @Override
-            public boolean apply(Passenger passenger) {
-                return passenger.isSuitable(routeId);
-            }
-        };
+    /**
+     * Adds all Passengers arrived since the last sampling, each with its own arrival time.
+     * The intervals come from the same Poisson process as in the timer mode.
+     */
+    private void sampleArrivals() {
+        if (!lazyArrivals)
+            return;
+        final long now = clock.currentTimeMillis();
+        while (nextArrival <= now) {
+            arrive(newPassenger(nextArrival));
+            final long interval = interval();
+            nextArrival = interval < Long.MAX_VALUE - nextArrival ? nextArrival + interval : Long.MAX_VALUE;
+        }
+    }
+
+    private void arrive(int passenger) {
+        if (!stationQueue.add(passenger)) {
+            // no Route has served the Station yet, nobody could wait for it
+            passengers.release(passenger);
+            return;
+        }
+        journal.passengerArrived(passengers.arrivalTime(passenger), symbol, passengers.id(passenger));
+    }
+
+    /**
+     * Passenger which has arrived at the transfer Station waits for the next Route of the journey,
+     * the rest leave the network.
+     */
+    private void leave(int passenger) {
+        final int destination = passengers.destination(passenger);
+        if (planner == null || destination == Symbols.NONE || destination == symbol) {
+            passengers.release(passenger);
+            return;
+        }
+        passengers.transfer(passenger, symbol, planner.routes(symbol, destination), clock.currentTimeMillis());
+        arrive(passenger);
+    }
+
+    private int newPassenger(long arrivalTime) {
+        if (planner == null) // any Route serving the Station will do
+            return passengers.allocate(symbol, Symbols.NONE, suitableRoutes, arrivalTime);
+        final int destination = planner.station(random.nextInt(planner.stationCount()));
+        return passengers.allocate(symbol, destination, planner.routes(symbol, destination), arrivalTime);
     }
 
     public static class StationApi {
@@ -151,23 +245,39 @@ public class Station extends UntypedActor {
         public static final Object PassengerHasArrived = "Passenger Has Arrived";
         public static final Object Data = "Data";
 
+        /**
+         * Bus of the Route has arrived, both given by their {@link Symbols}.
+         */
         public static class Arrived implements Serializable {
-            public final String busId;
-            public final String routeId;
+            public final int busId;
+            public final int routeId;
 
-            public Arrived(String busId, String routeId) {
+            public Arrived(int busId, int routeId) {
                 this.busId = busId;
                 this.routeId = routeId;
             }
         }
 
+        /**
+         * Request to board Passengers of the Route symbol: {@code time} is the boarding time of one Passenger
+         * in milliseconds and {@code load} is the number of free places in the Bus.
+         */
         public static class Boarding implements Serializable {
 
-            public final String routeId;
+            public final int busId;
+            public final int routeId;
             public final long time;
             public final int load;
 
-            public Boarding(String routeId, long time, int load) {
+            public Boarding(int routeId, long time, int load) {
+                this(Symbols.NONE, routeId, time, load);
+            }
+
+            /**
+             * @param busId symbol of the Bus, returned in the {@link BoardingGroup} when one actor serves many Buses
+             */
+            public Boarding(int busId, int routeId, long time, int load) {
+                this.busId = busId;
                 this.routeId = routeId;
                 this.time = time;
                 this.load = load;
@@ -180,16 +290,84 @@ public class Station extends UntypedActor {
 
         }
 
+        /**
+         * Bus of the Route has stopped: {@link Arrived}, alighting of the Passengers and {@link Boarding}
+         * in one message, answered by a single {@link BoardingGroup} with the symbol of the Bus. It is used by
+         * {@link Fleet}, which serves all its Buses by one actor.
+         */
+        public static class Stopped implements Serializable {
+
+            public final int busId;
+            public final int routeId;
+            public final int[] alighting;
+            public final long time;
+            public final int load;
+
+            public Stopped(int busId, int routeId, int[] alighting, long time, int load) {
+                this.busId = busId;
+                this.routeId = routeId;
+                this.alighting = alighting;
+                this.time = time;
+                this.load = load;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("[%s, %s, %s, %s, %s]", busId, routeId, alighting.length, time, load);
+            }
+
+        }
+
+        /**
+         * Handles of the Passengers boarded in response to {@link Boarding}, at most {@link Boarding#load} of them.
+         * Empty group means there are no more Passengers for the Route.
+         */
+        public static class BoardingGroup implements Serializable {
+            public final int busId;
+            public final int[] passengers;
+
+            public BoardingGroup(int[] passengers) {
+                this(Symbols.NONE, passengers);
+            }
+
+            public BoardingGroup(int busId, int[] passengers) {
+                this.busId = busId;
+                this.passengers = passengers;
+            }
+
+            @Override
+            public String toString() {
+                return Arrays.toString(passengers);
+            }
+        }
+
+        /**
+         * Handles of all Passengers leaving the Bus at the Station, answered by a single {@code Alighting}.
+         * The Passengers are released to the {@link PassengerPool}.
+         */
+        public static class AlightingGroup implements Serializable {
+            public final int[] passengers;
+
+            public AlightingGroup(int[] passengers) {
+                this.passengers = passengers;
+            }
+
+            @Override
+            public String toString() {
+                return Arrays.toString(passengers);
+            }
+        }
+
         public static class ToAlight implements Serializable {
-            public final Passenger passenger;
+            public final int passenger;
 
-            public ToAlight(Passenger passenger) {
+            public ToAlight(int passenger) {
                 this.passenger = passenger;
             }
 
             @Override
             public String toString() {
-                return passenger.toString();
+                return String.valueOf(passenger);
             }
         }
 
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.google.common.collect.ImmutableList;
+import com.javadocmd.simplelatlng.LatLng;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.fixedorgo.transit.Geo.METERS_PER_DEGREE;
+import static com.fixedorgo.transit.Geo.distance;
+import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.toRadians;
+
+/**
+ * Immutable uniform grid over the Station locations, built once at network load time. It answers
+ * nearest Station and radius queries by visiting only the grid cells around the location instead
+ * of every Station. Distances are the planar approximation of {@link Geo#distance}.
+ */
+public final class StationIndex implements Serializable {
+
+    /**
+     * Default cell size: about the distance between neighbouring Stations in a city.
+     */
+    public static final double CELL_SIZE = 500; // meters
+
+    private final List<StationData> stations;
+
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    // grid origin and cell size in degrees
+    private final double minLatitude;
+
+    private final double minLongitude;
+
+    private final double cellLatitude;
+
+    private final double cellLongitude;
+
+    private final int rows;
+
+    private final int columns;
+
+    // smallest cell side in meters over the whole grid, the longitude side shrinks towards the poles
+    private final double cellMeters;
+
+    // Stations of the cell c are cellStations[cellStarts[c]] until cellStations[cellStarts[c + 1]]
+    private final int[] cellStarts;
+
+    private final int[] cellStations;
+
+    public StationIndex(List<StationData> stations) {
+        this(stations, CELL_SIZE);
+    }
+
+    public StationIndex(List<StationData> stations, double cellSize) {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException(String.format("Cell size should be positive [%s]", cellSize));
+        this.stations = ImmutableList.copyOf(stations);
+        final int size = stations.size();
+        latitudes = new double[size];
+        longitudes = new double[size];
+        double minLatitude = 90, maxLatitude = -90, minLongitude = 180, maxLongitude = -180;
+        for (int i = 0; i < size; i++) {
+            final LatLng location = stations.get(i).location;
+            latitudes[i] = location.getLatitude();
+            longitudes[i] = location.getLongitude();
+            minLatitude = min(minLatitude, latitudes[i]);
+            maxLatitude = max(maxLatitude, latitudes[i]);
+            minLongitude = min(minLongitude, longitudes[i]);
+            maxLongitude = max(maxLongitude, longitudes[i]);
+        }
+        if (size == 0)
+            minLatitude = maxLatitude = minLongitude = maxLongitude = 0;
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+
+        // longitude cells are sized at the middle of the network and are narrower towards its pole side
+        final double poleSide = min(cos(toRadians(max(abs(minLatitude), abs(maxLatitude)))), 1);
+        final double middle = max(cos(toRadians((minLatitude + maxLatitude) / 2)), 1e-6);
+        cellLatitude = cellSize / METERS_PER_DEGREE;
+        cellLongitude = cellSize / (METERS_PER_DEGREE * middle);
+        cellMeters = min(cellSize, cellSize * max(poleSide, 0) / middle);
+        rows = (int) ((maxLatitude - minLatitude) / cellLatitude) + 1;
+        columns = (int) ((maxLongitude - minLongitude) / cellLongitude) + 1;
+
+        // counting sort of the Stations by cell
+        cellStarts = new int[rows * columns + 1];
+        final int[] cells = new int[size];
+        for (int i = 0; i < size; i++)
+            cellStarts[(cells[i] = cell(row(latitudes[i]), column(longitudes[i]))) + 1]++;
+        for (int c = 0; c < rows * columns; c++)
+            cellStarts[c + 1] += cellStarts[c];
+        cellStations = new int[size];
+        final int[] fill = cellStarts.clone();
+        for (int i = 0; i < size; i++)
+            cellStations[fill[cells[i]]++] = i;
+    }
+
+    public int size() {
+        return latitudes.length;
+    }
+
+    public StationData station(int i) {
+        return stations.get(i);
+    }
+
+    /**
+     * @return the nearest Station or null if there are no Stations
+     */
+    public StationData nearest(LatLng location) {
+        final int nearest = nearest(location.getLatitude(), location.getLongitude(), Double.POSITIVE_INFINITY);
+        return nearest >= 0 ? stations.get(nearest) : null;
+    }
+
+    /**
+     * @return the nearest Station within the radius or null if there is no such Station
+     */
+    public StationData nearest(LatLng location, double radius) {
+        final int nearest = nearest(location.getLatitude(), location.getLongitude(), radius);
+        return nearest >= 0 ? stations.get(nearest) : null;
+    }
+
+    /**
+     * Visits the grid in square rings around the cell of the location until no unvisited cell can hold
+     * a closer Station than the best one found, or any Station within the radius.
+     *
+     * @return index of the nearest Station within the radius or -1 if there is no such Station
+     */
+    public int nearest(double latitude, double longitude, double radius) {
+        final int row = row(latitude);
+        final int column = column(longitude);
+        int nearest = -1;
+        for (int ring = 0; ring < max(rows, columns); ring++) {
+            for (int r = max(row - ring, 0); r <= min(row + ring, rows - 1); r++) {
+                if (r == row - ring || r == row + ring) {
+                    for (int c = max(column - ring, 0); c <= min(column + ring, columns - 1); c++)
+                        nearest = nearestIn(cell(r, c), latitude, longitude, radius, nearest);
+                } else {
+                    if (column - ring >= 0)
+                        nearest = nearestIn(cell(r, column - ring), latitude, longitude, radius, nearest);
+                    if (column + ring < columns)
+                        nearest = nearestIn(cell(r, column + ring), latitude, longitude, radius, nearest);
+                }
+            }
+            // every cell out of the ring is at least this far from the location
+            final double beyond = ring * cellMeters;
+            if (beyond > radius || nearest >= 0 && beyond >= distanceTo(nearest, latitude, longitude))
+                break;
+        }
+        return nearest;
+    }
+
+    /**
+     * @return Stations within the radius ordered by the distance to the location
+     */
+    public List<StationData> within(LatLng location, double radius) {
+        final double latitude = location.getLatitude();
+        final double longitude = location.getLongitude();
+        final int[] found = within(latitude, longitude, radius);
+        final Integer[] order = new Integer[found.length];
+        for (int k = 0; k < found.length; k++)
+            order[k] = found[k];
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(distanceTo(a, latitude, longitude), distanceTo(b, latitude, longitude));
+            }
+        });
+        final ImmutableList.Builder<StationData> result = ImmutableList.builder();
+        for (int i : order)
+            result.add(stations.get(i));
+        return result.build();
+    }
+
+    /**
+     * @return indexes of the Stations within the radius, in no particular order
+     */
+    public int[] within(double latitude, double longitude, double radius) {
+        final double latitudeSpan = radius / METERS_PER_DEGREE;
+        final double widest = max(abs(latitude) + latitudeSpan, abs(latitude - latitudeSpan));
+        final double longitudeSpan = widest < 90 ? latitudeSpan / cos(toRadians(widest)) : 360;
+        final int[] result = new int[size()];
+        int found = 0;
+        for (int r = row(latitude - latitudeSpan); r <= row(latitude + latitudeSpan); r++)
+            for (int c = column(longitude - longitudeSpan); c <= column(longitude + longitudeSpan); c++) {
+                final int cell = cell(r, c);
+                for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                    final int i = cellStations[k];
+                    if (distanceTo(i, latitude, longitude) <= radius)
+                        result[found++] = i;
+                }
+            }
+        return Arrays.copyOf(result, found);
+    }
+
+    private int nearestIn(int cell, double latitude, double longitude, double radius, int nearest) {
+        double best = nearest >= 0 ? distanceTo(nearest, latitude, longitude) : radius;
+        for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+            final int i = cellStations[k];
+            final double distance = distanceTo(i, latitude, longitude);
+            if (distance <= best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private double distanceTo(int i, double latitude, double longitude) {
+        return distance(latitude, longitude, latitudes[i], longitudes[i]);
+    }
+
+    private int row(double latitude) {
+        return clamp((int) Math.floor((latitude - minLatitude) / cellLatitude), rows);
+    }
+
+    private int column(double longitude) {
+        return clamp((int) Math.floor((longitude - minLongitude) / cellLongitude), columns);
+    }
+
+    private int cell(int row, int column) {
+        return row * columns + column;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+
+}
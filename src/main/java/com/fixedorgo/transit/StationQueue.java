@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.fixedorgo.transit.PassengerPool.NO_PASSENGER;
+
+/**
+ * Passengers waiting at a Station, indexed by Route symbol. Every Route keeps the handles of its Passengers
+ * in order of arrival. A Passenger suitable for several Routes is shared between their queues and leaves
+ * all of them at once: the other queues keep a stale entry, skipped when it comes to the head. Entries are
+ * told by the ticket of the wait, so a stale entry never matches a later wait of the same Passenger,
+ * here or at another Station.
+ * <p>
+ * Adding, boarding and removing of a Passenger take constant time per suitable Route.
+ */
+public class StationQueue {
+
+    private final PassengerPool pool;
+
+    private RouteQueue[] queues = new RouteQueue[16];
+
+    private int size = 0;
+
+    public StationQueue(PassengerPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return {@code false} if the Passenger is already waiting or has no suitable Routes
+     */
+    public boolean add(int passenger) {
+        final BitSet routes = pool.routes(passenger);
+        if (pool.ticket(passenger) != 0 || routes.isEmpty())
+            return false;
+        final int ticket = pool.await(passenger);
+        for (int routeId = routes.nextSetBit(0); routeId >= 0; routeId = routes.nextSetBit(routeId + 1))
+            queueFor(routeId).add(passenger, ticket);
+        size++;
+        return true;
+    }
+
+    /**
+     * Takes the longest waiting Passenger suitable for the Route.
+     *
+     * @return handle of the Passenger or {@link PassengerPool#NO_PASSENGER}
+     */
+    public int poll(int routeId) {
+        final RouteQueue queue = queue(routeId);
+        if (queue == null)
+            return NO_PASSENGER;
+        while (queue.waiting > 0) {
+            final int passenger = queue.slots[queue.head];
+            final int ticket = queue.tickets[queue.head++];
+            // the Passenger may have been boarded by another Route and even be waiting elsewhere since,
+            // or the slot may have been reused by another Passenger
+            if (pool.ticket(passenger) == ticket) {
+                remove(passenger);
+                return passenger;
+            }
+        }
+        return NO_PASSENGER;
+    }
+
+    /**
+     * Takes up to {@code limit} longest waiting Passengers suitable for the Route, in order of arrival.
+     */
+    public int[] poll(int routeId, int limit) {
+        final int count = Math.min(limit, size(routeId));
+        if (count <= 0)
+            return new int[0];
+        final int[] passengers = new int[count];
+        for (int i = 0; i < count; i++)
+            passengers[i] = poll(routeId);
+        return passengers;
+    }
+
+    /**
+     * @return {@code false} if the Passenger was not waiting
+     */
+    public boolean remove(int passenger) {
+        if (pool.ticket(passenger) == 0)
+            return false;
+        final BitSet routes = pool.routes(passenger);
+        for (int routeId = routes.nextSetBit(0); routeId >= 0; routeId = routes.nextSetBit(routeId + 1))
+            queue(routeId).leave();
+        pool.stopWaiting(passenger);
+        size--;
+        return true;
+    }
+
+    /**
+     * @return number of Passengers suitable for the Route
+     */
+    public int size(int routeId) {
+        final RouteQueue queue = queue(routeId);
+        return queue != null ? queue.waiting : 0;
+    }
+
+    /**
+     * @return number of waiting Passengers
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private RouteQueue queue(int routeId) {
+        return routeId < queues.length ? queues[routeId] : null;
+    }
+
+    private RouteQueue queueFor(int routeId) {
+        if (routeId >= queues.length)
+            queues = Arrays.copyOf(queues, Math.max(queues.length * 2, routeId + 1));
+        RouteQueue queue = queues[routeId];
+        if (queue == null)
+            queues[routeId] = queue = new RouteQueue();
+        return queue;
+    }
+
+    /**
+     * Handles and wait tickets of the Passengers in order of arrival, the tickets tell the stale entries.
+     */
+    private static class RouteQueue {
+
+        int[] slots = new int[16];
+
+        int[] tickets = new int[16];
+
+        int head = 0;
+
+        int tail = 0;
+
+        // number of the entries of waiting Passengers
+        int waiting = 0;
+
+        void add(int slot, int ticket) {
+            if (tail == slots.length) {
+                final int length = tail - head;
+                if (length > slots.length / 2) {
+                    slots = Arrays.copyOf(slots, slots.length * 2);
+                    tickets = Arrays.copyOf(tickets, tickets.length * 2);
+                }
+                System.arraycopy(slots, head, slots, 0, length);
+                System.arraycopy(tickets, head, tickets, 0, length);
+                head = 0;
+                tail = length;
+            }
+            slots[tail] = slot;
+            tickets[tail++] = ticket;
+            waiting++;
+        }
+
+        void leave() {
+            // nobody is waiting, the rest of the entries are stale
+            if (--waiting == 0)
+                head = tail = 0;
+        }
+
+    }
+
+}
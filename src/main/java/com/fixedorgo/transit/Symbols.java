@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.Extension;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.commons.lang3.StringUtils.EMPTY;
+
+/**
+ * Network-wide table of interned ids: every Station, Route, Bus... id gets a dense int number once,
+ * when the actor is created, and the messages, maps and Passengers work with the numbers afterwards.
+ * Number {@link #NONE} is reserved for the empty id.
+ * <p>
+ * Interning is thread-safe, looking up a name by its number is a plain array read.
+ */
+public class Symbols implements Extension {
+
+    public static final int NONE = 0;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] names = new String[64];
+
+    private int size = 0;
+
+    public Symbols() {
+        id(EMPTY);
+    }
+
+    /**
+     * @return number of the id, the same for all calls with the same id
+     */
+    public int id(String name) {
+        final Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        synchronized (this) {
+            final Integer existing = ids.get(name);
+            if (existing != null)
+                return existing;
+            String[] names = this.names;
+            if (size == names.length)
+                names = Arrays.copyOf(names, size * 2);
+            names[size] = name;
+            // publish the name before its number
+            this.names = names;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    public String name(int id) {
+        final String[] names = this.names;
+        if (id < 0 || id >= names.length || names[id] == null)
+            throw new IllegalArgumentException(String.format("Unknown symbol [%s]", id));
+        return names[id];
+    }
+
+    /**
+     * @return number of interned ids, which are numbered from zero
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.ExtensionIdProvider;
+
+/**
+ * Provides the {@link Symbols} table shared by all actors of an {@link ActorSystem}.
+ */
+public class SymbolsExtension extends AbstractExtensionId<Symbols> implements ExtensionIdProvider {
+
+    public static final SymbolsExtension SymbolsProvider = new SymbolsExtension();
+
+    public static Symbols symbolsOf(ActorSystem system) {
+        return SymbolsProvider.get(system);
+    }
+
+    @Override
+    public SymbolsExtension lookup() {
+        return SymbolsProvider;
+    }
+
+    @Override
+    public Symbols createExtension(ExtendedActorSystem system) {
+        return new Symbols();
+    }
+
+}
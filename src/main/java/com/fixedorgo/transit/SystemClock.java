@@ -18,27 +18,66 @@ package com.fixedorgo.transit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class SystemClock {
 
     private static Logger log = LoggerFactory.getLogger(SystemClock.class);
 
-    private static int timeScale = 1;
+    // fractional, so the delays shorter than a millisecond in wall time are not collapsed to zero
+    private static volatile double timeScale = 1;
 
+    // rebased at the moment of every change, so the time before it is counted at the old scale
+    private static final List<RealTimeClock> clocks = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return wall clock milliseconds of the simulation time, rounded to the nearest
+     */
     public static long recalculateTime(long time) {
-        return max(time, 0) / timeScale;
+        return Math.round(max(time, 0) / timeScale);
+    }
+
+    /**
+     * @return wall clock nanoseconds of the simulation duration
+     */
+    public static long recalculateNanos(long duration, TimeUnit unit) {
+        return Math.round(max(unit.toNanos(duration), 0) / timeScale);
     }
 
-    public static void setTimeScale(int timeScale) {
+    public static long simulationTime(long time) {
+        return Math.round(max(time, 0) * timeScale);
+    }
+
+    public static double getTimeScale() {
+        return timeScale;
+    }
+
+    public static synchronized void setTimeScale(double timeScale) {
+        if (!(timeScale > 0))
+            throw new IllegalArgumentException(String.format("Time scale should be positive [%s]", timeScale));
+        final long now = System.currentTimeMillis();
+        for (RealTimeClock clock : clocks)
+            clock.rebase(now, timeScale);
         SystemClock.timeScale = timeScale;
     }
 
+    static synchronized void register(RealTimeClock clock) {
+        clock.rebase(System.currentTimeMillis(), timeScale);
+        clocks.add(clock);
+    }
+
+    static void unregister(RealTimeClock clock) {
+        clocks.remove(clock);
+    }
+
     public static void waitFor(long duration, TimeUnit unit) {
         try {
-            unit.sleep(recalculateTime(duration));
+            NANOSECONDS.sleep(recalculateNanos(duration, unit));
         } catch (InterruptedException e) {
             log.debug("Waiting was interrupted", e);
         }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import com.fixedorgo.transit.TimeScaleController.TimeScaleApi.Probe;
+import com.fixedorgo.transit.TimeScaleController.TimeScaleApi.TimeScale;
+import com.typesafe.config.Config;
+import scala.concurrent.duration.Duration;
+
+import java.io.Serializable;
+
+import static com.fixedorgo.transit.ActorRoles.simulation;
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.MetricsExtension.metricsOf;
+import static com.fixedorgo.transit.TimeScaleController.TimeScaleApi.GetTimeScale;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Adjusts {@link SystemClock} time scale of the real-time mode to the highest value which keeps the lag
+ * of the simulation under the {@code transit.time-scale.lag-bound} and the backlog of the actors under the
+ * {@code backlog-bound}. Every probe interval the lag is measured as the larger of:
+ * <ul>
+ * <li>mean lateness of the delayed messages fired by the {@link TimingWheel};</li>
+ * <li>lateness of a delayed probe message by the time this actor receives it, which includes
+ * the wait in the dispatcher queue behind the backlog of the other actors. The controller runs on the
+ * simulation dispatcher for that, see {@link #props()}.</li>
+ * </ul>
+ * and the backlog is the number of messages waiting in the {@link MeteredMailbox}es with {@code backlog = on}:
+ * the simulation actors and the DepartureData, which must not fall behind.
+ * The time scale grows by a fixed step while both are within the bounds and is cut by a factor when they
+ * are not (additive increase, multiplicative decrease), within the configured range.
+ * <pre>
+ *     system.actorOf(TimeScaleController.props(), "time-scale");
+ * </pre>
+ */
+public class TimeScaleController extends MeteredActor {
+
+    private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+    private final Config config = getContext().system().settings().config().getConfig("transit.time-scale");
+
+    private final long interval = config.getDuration("probe-interval", MILLISECONDS);
+
+    private final double lagBound = config.getDuration("lag-bound", MILLISECONDS);
+
+    private final long backlogBound = config.getLong("backlog-bound");
+
+    private final double minTimeScale = config.getDouble("min");
+
+    private final double maxTimeScale = config.getDouble("max");
+
+    private final double increase = config.getDouble("increase");
+
+    private final double decrease = config.getDouble("decrease");
+
+    // null if the real-time clock uses the Akka scheduler
+    private final TimingWheel wheel;
+
+    private final Metrics metrics = metricsOf(getContext().system());
+
+    // pending probe of the Akka scheduler, the timing wheel drops its timers on shutdown
+    private Cancellable probe;
+
+    private double lag = 0;
+
+    private long backlog = 0;
+
+    /**
+     * @return Props of the controller on the simulation dispatcher, where its probe queues behind the backlog
+     */
+    public static Props props() {
+        return simulation(Props.create(TimeScaleController.class));
+    }
+
+    public TimeScaleController() {
+        final Clock clock = clockOf(getContext().system());
+        if (!(clock instanceof RealTimeClock))
+            throw new IllegalArgumentException(String.format("Time scale is controlled in real-time mode only, not [%s]",
+                    getContext().system().settings().config().getString("transit.clock.mode")));
+        wheel = ((RealTimeClock) clock).getTimingWheel();
+        if (!(minTimeScale > 0 && minTimeScale <= maxTimeScale))
+            throw new IllegalArgumentException(String.format("Invalid time scale range [%s, %s]",
+                    minTimeScale, maxTimeScale));
+        if (backlogBound < 0)
+            throw new IllegalArgumentException(String.format("Illegal backlog bound [%s]", backlogBound));
+        if (!(decrease > 0 && decrease < 1))
+            throw new IllegalArgumentException(String.format("Time scale decrease should be in (0, 1) [%s]", decrease));
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        SystemClock.setTimeScale(min(max(config.getDouble("initial"), minTimeScale), maxTimeScale));
+        probe();
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        super.postStop();
+        if (probe != null)
+            probe.cancel();
+    }
+
+    @Override
+    protected void onMessage(Object message) throws Exception {
+
+        if (message instanceof Probe) {
+
+            final double probeLag = NANOSECONDS.toMicros(max(System.nanoTime() - ((Probe) message).deadline, 0)) / 1000.0;
+            final double eventLag = wheel != null ? wheel.takeLateness().getMean() : Double.NaN;
+            lag = Double.isNaN(eventLag) ? probeLag : max(probeLag, eventLag);
+            backlog = metrics.getBacklog();
+            adjust(lag, backlog);
+            probe();
+
+        } else if (message.equals(GetTimeScale)) {
+
+            getSender().tell(new TimeScale(SystemClock.getTimeScale(), lag, backlog), getSelf());
+
+        } else {
+            unhandled(message);
+        }
+
+    }
+
+    /**
+     * The probe is sent from the scheduler thread like any delayed message of the simulation, so it waits
+     * behind the backlog of the other actors in the dispatcher queue.
+     */
+    private void probe() {
+        final Probe probe = new Probe(System.nanoTime() + MILLISECONDS.toNanos(interval));
+        if (wheel != null)
+            wheel.schedule(interval, MILLISECONDS, getSelf(), probe, ActorRef.noSender());
+        else
+            this.probe = getContext().system().scheduler().scheduleOnce(Duration.create(interval, MILLISECONDS),
+                    getSelf(), probe, getContext().dispatcher(), ActorRef.noSender());
+    }
+
+    private void adjust(double lag, long backlog) {
+        final double timeScale = SystemClock.getTimeScale();
+        final double adjusted = lag <= lagBound && backlog <= backlogBound
+                ? min(timeScale + increase, maxTimeScale)
+                : max(timeScale * decrease, minTimeScale);
+        if (adjusted != timeScale) {
+            SystemClock.setTimeScale(adjusted);
+            log.debug("Time scale [{}] for lag [{} ms] and backlog [{}]", adjusted, lag, backlog);
+        }
+    }
+
+    public static class TimeScaleApi {
+
+        public static final Object GetTimeScale = "Get Time Scale";
+
+        static class Probe implements Serializable {
+            final long deadline; // System.nanoTime() of the delivery
+
+            Probe(long deadline) {
+                this.deadline = deadline;
+            }
+        }
+
+        /**
+         * Current effective speed-up of the simulation over the wall clock, the latest measured lag and backlog.
+         */
+        public static class TimeScale implements Serializable {
+            public final double timeScale;
+            public final double lagMillis;
+            public final long backlog;
+
+            public TimeScale(double timeScale, double lagMillis, long backlog) {
+                this.timeScale = timeScale;
+                this.lagMillis = lagMillis;
+                this.backlog = backlog;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("Time Scale [%.2f, lag %.3f ms, backlog %d]", timeScale, lagMillis, backlog);
+            }
+        }
+
+    }
+
+}
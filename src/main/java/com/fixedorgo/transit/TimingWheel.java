@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import com.google.common.base.Ticker;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Hierarchical timing wheel which delivers delayed messages with the resolution of one tick, about a
+ * millisecond, instead of the 10 ms of the Akka scheduler. Scheduling is O(1) from any thread: timers
+ * are handed over through a lock-free queue to the wheel thread, which places them into one of four
+ * wheels of 256 slots by the distance of their deadline and cascades them to the finer wheels as the
+ * time comes. Far timers are moved only a few times in their life, so hundreds of thousands of pending
+ * timers don't slow down the ticks. The wheel thread sleeps until the next occupied slot of the finest wheel
+ * or its next turn, when the coarser wheels cascade, and a timer due earlier wakes it up.
+ * <p>
+ * The lateness of every fired timer against its deadline is collected, see {@link #takeLateness()}.
+ */
+public final class TimingWheel {
+
+    private static final int WHEEL_BITS = 8;
+
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+
+    private final Ticker ticker;
+
+    private final long startNanos;
+
+    // heads of the singly linked timer lists, by level and slot
+    private final Timer[][] wheels = new Timer[LEVELS][WHEEL_SIZE];
+
+    // timers beyond the range of the top wheel, placed again whenever the top wheel turns
+    private Timer overflow;
+
+    private final Queue<Timer> incoming = new ConcurrentLinkedQueue<>();
+
+    // null if the wheel is driven by the caller
+    private final Thread thread;
+
+    // the last processed tick and the number of placed timers, owned by the wheel thread
+    private long tick;
+
+    private long pending;
+
+    // due timers in order of their ticks, owned by the wheel thread
+    private Timer firstDue;
+
+    private Timer lastDue;
+
+    // tick the wheel thread sleeps until, Long.MAX_VALUE if there are no timers and MIN_VALUE if it is awake
+    private volatile long wakeTick = Long.MIN_VALUE;
+
+    private volatile boolean running = true;
+
+    private RunningStatistics lateness = new RunningStatistics();
+
+    // lateness in nanoseconds since the start
+    private final Histogram latenessHistogram = new Histogram();
+
+    public TimingWheel(long tickDuration, TimeUnit unit, String name) {
+        this(tickDuration, unit, Ticker.systemTicker(), name);
+    }
+
+    /**
+     * @param name name of the wheel thread, or null to drive the wheel by {@link #process()} calls instead
+     */
+    TimingWheel(long tickDuration, TimeUnit unit, Ticker ticker, String name) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException(String.format("Tick duration should be positive [%s]", tickDuration));
+        tickNanos = unit.toNanos(tickDuration);
+        this.ticker = ticker;
+        startNanos = ticker.read();
+        if (name == null) {
+            thread = null;
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Delivers the message to the receiver after the given wall clock delay. Safe to call from any thread.
+     */
+    public void schedule(long delay, TimeUnit unit, ActorRef receiver, Object message, ActorRef sender) {
+        final Timer timer = new Timer(ticker.read() + max(unit.toNanos(delay), 0), receiver, message, sender);
+        incoming.add(timer);
+        if (deadlineTick(timer) < wakeTick)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return lateness of the timers fired since the previous call, in milliseconds
+     */
+    public synchronized RunningStatistics takeLateness() {
+        final RunningStatistics taken = lateness;
+        lateness = new RunningStatistics();
+        return taken;
+    }
+
+    /**
+     * @return lateness of all fired timers in nanoseconds, recorded since the start
+     */
+    public Histogram getLatenessHistogram() {
+        return latenessHistogram;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Stops the wheel thread, the pending timers are dropped.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void loop() {
+        while (running) {
+            final long wake = process();
+            wakeTick = wake;
+            // a timer scheduled before the wake tick was published is in the queue already
+            if (incoming.isEmpty() && running) {
+                if (wake == Long.MAX_VALUE)
+                    LockSupport.park(this);
+                else
+                    LockSupport.parkNanos(this, startNanos + wake * tickNanos - ticker.read());
+            }
+            wakeTick = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Places the scheduled timers and fires the due ones, up to the current tick.
+     *
+     * @return tick to sleep until, Long.MAX_VALUE if there are no timers
+     */
+    long process() {
+        place(incoming);
+        advance((ticker.read() - startNanos) / tickNanos);
+        final Timer due = firstDue;
+        firstDue = lastDue = null;
+        fire(due);
+        return pending == 0 ? Long.MAX_VALUE : nextTick();
+    }
+
+    /**
+     * @return the first occupied tick of the finest wheel in its current turn, or the start of the next turn
+     */
+    private long nextTick() {
+        final long turn = (tick | WHEEL_MASK) + 1;
+        for (long next = tick + 1; next < turn; next++)
+            if (wheels[0][(int) next & WHEEL_MASK] != null)
+                return next;
+        return turn;
+    }
+
+    // a timer is due on the first tick which starts at or after its deadline
+    private long deadlineTick(Timer timer) {
+        return (timer.deadline - startNanos + tickNanos - 1) / tickNanos;
+    }
+
+    /**
+     * Processes the ticks up to the given one, cascading the coarser wheels when the finer ones turn.
+     */
+    private void advance(long target) {
+        while (tick < target) {
+            final long next = tick + 1;
+            int level = 0;
+            while (level + 1 < LEVELS && (next & ((1L << (WHEEL_BITS * (level + 1))) - 1)) == 0)
+                level++;
+            tick = next;
+            if (level == LEVELS - 1) {
+                final Timer far = overflow;
+                overflow = null;
+                cascade(far);
+            }
+            for (int l = level; l > 0; l--) {
+                final int slot = (int) (next >>> (WHEEL_BITS * l)) & WHEEL_MASK;
+                final Timer cascaded = wheels[l][slot];
+                wheels[l][slot] = null;
+                cascade(cascaded);
+            }
+            final int slot = (int) next & WHEEL_MASK;
+            final Timer timers = wheels[0][slot];
+            wheels[0][slot] = null;
+            for (Timer timer = timers, following; timer != null; timer = following) {
+                following = timer.next;
+                pending--;
+                addDue(timer);
+            }
+        }
+    }
+
+    private void cascade(Timer timers) {
+        for (Timer timer = timers, following; timer != null; timer = following) {
+            following = timer.next;
+            pending--;
+            place(timer);
+        }
+    }
+
+    private void place(Queue<Timer> timers) {
+        Timer timer;
+        while ((timer = timers.poll()) != null)
+            place(timer);
+    }
+
+    private void place(Timer timer) {
+        final long deadline = deadlineTick(timer);
+        final long delta = deadline - tick;
+        if (delta <= 0) {
+            addDue(timer);
+            return;
+        }
+        pending++;
+        int level = 0;
+        while (level < LEVELS && delta >= 1L << (WHEEL_BITS * (level + 1)))
+            level++;
+        if (level == LEVELS) {
+            timer.next = overflow;
+            overflow = timer;
+        } else {
+            final int slot = (int) (deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+            timer.next = wheels[level][slot];
+            wheels[level][slot] = timer;
+        }
+    }
+
+    private void addDue(Timer timer) {
+        timer.next = null;
+        if (lastDue == null)
+            firstDue = timer;
+        else
+            lastDue.next = timer;
+        lastDue = timer;
+    }
+
+    /**
+     * Records the lateness of the due timers under the lock of {@link #takeLateness()} and sends them after it.
+     */
+    private void fire(Timer due) {
+        if (due == null)
+            return;
+        final long now = ticker.read();
+        synchronized (this) {
+            for (Timer timer = due; timer != null; timer = timer.next)
+                lateness.add((double) NANOSECONDS.toMicros(max(now - timer.deadline, 0)) / 1000);
+        }
+        for (Timer timer = due; timer != null; timer = timer.next) {
+            latenessHistogram.record(max(now - timer.deadline, 0));
+            timer.receiver.tell(timer.message, timer.sender);
+        }
+    }
+
+    private static final class Timer {
+
+        final long deadline; // ticker nanoseconds of the delivery
+
+        final ActorRef receiver;
+
+        final Object message;
+
+        final ActorRef sender;
+
+        Timer next;
+
+        Timer(long deadline, ActorRef receiver, Object message, ActorRef sender) {
+            this.deadline = deadline;
+            this.receiver = receiver;
+            this.message = message;
+            this.sender = sender;
+        }
+
+    }
+
+}
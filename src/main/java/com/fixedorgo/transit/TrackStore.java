@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Append-only track of a vehicle: time, location and cumulative distance of every sample kept in columns of
+ * primitive arrays, allocated by chunks. Samples with the same time are kept separately.
+ * <p>
+ * With a capacity the store works as a ring: the oldest chunks are dropped and reused, so the memory stays
+ * bounded by the capacity plus one chunk.
+ */
+public class TrackStore {
+
+    private static final int CHUNK_SHIFT = 12;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int capacity;
+
+    private final List<Chunk> chunks = Lists.newArrayList();
+
+    private Chunk spare;
+
+    // absolute index of the oldest sample kept, of the next sample, and of the first chunk kept
+    private long head = 0;
+
+    private long tail = 0;
+
+    private long firstChunk = 0;
+
+    /**
+     * Unbounded store.
+     */
+    public TrackStore() {
+        this(0);
+    }
+
+    /**
+     * @param capacity number of the latest samples to keep, zero for unbounded store
+     */
+    public TrackStore(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException(String.format("Illegal capacity [%s]", capacity));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Samples have to be appended in order of time.
+     */
+    public void append(long time, double latitude, double longitude, double distance) {
+        if (tail > head && time < time(size() - 1))
+            throw new IllegalArgumentException(String.format("Sample at [%s] is older than the last one", time));
+        if ((tail & CHUNK_MASK) == 0)
+            chunks.add(newChunk());
+        final Chunk chunk = chunks.get(chunks.size() - 1);
+        final int offset = (int) (tail & CHUNK_MASK);
+        chunk.times[offset] = time;
+        chunk.latitudes[offset] = latitude;
+        chunk.longitudes[offset] = longitude;
+        chunk.distances[offset] = distance;
+        tail++;
+
+        if (capacity > 0 && tail - head > capacity) {
+            head = tail - capacity;
+            while ((head >> CHUNK_SHIFT) > firstChunk) {
+                spare = chunks.remove(0);
+                firstChunk++;
+            }
+        }
+    }
+
+    /**
+     * @return number of samples kept
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public long time(int i) {
+        return chunk(i).times[offset(i)];
+    }
+
+    public double latitude(int i) {
+        return chunk(i).latitudes[offset(i)];
+    }
+
+    public double longitude(int i) {
+        return chunk(i).longitudes[offset(i)];
+    }
+
+    public double distance(int i) {
+        return chunk(i).distances[offset(i)];
+    }
+
+    /**
+     * @return index of the first sample not older than the time, or {@link #size()} if there is no such sample
+     */
+    public int indexOf(long time) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (time(middle) < time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Visits the samples with time in {@code [from, to)}, in order of time.
+     */
+    public void forEach(long from, long to, Visitor visitor) {
+        for (int i = indexOf(from), size = size(); i < size; i++) {
+            final Chunk chunk = chunk(i);
+            final int offset = offset(i);
+            if (chunk.times[offset] >= to)
+                return;
+            visitor.visit(chunk.times[offset], chunk.latitudes[offset], chunk.longitudes[offset],
+                    chunk.distances[offset]);
+        }
+    }
+
+    private Chunk chunk(int i) {
+        if (i < 0 || i >= size())
+            throw new IndexOutOfBoundsException(String.format("Sample [%s] of [%s]", i, size()));
+        return chunks.get((int) (((head + i) >> CHUNK_SHIFT) - firstChunk));
+    }
+
+    private int offset(int i) {
+        return (int) ((head + i) & CHUNK_MASK);
+    }
+
+    private Chunk newChunk() {
+        final Chunk chunk = spare != null ? spare : new Chunk();
+        spare = null;
+        return chunk;
+    }
+
+    public interface Visitor {
+        void visit(long time, double latitude, double longitude, double distance);
+    }
+
+    private static class Chunk {
+        final long[] times = new long[CHUNK_SIZE];
+        final double[] latitudes = new double[CHUNK_SIZE];
+        final double[] longitudes = new double[CHUNK_SIZE];
+        final double[] distances = new double[CHUNK_SIZE];
+    }
+
+}
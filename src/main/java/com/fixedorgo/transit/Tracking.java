@@ -15,43 +15,77 @@
  */
 package com.fixedorgo.transit;
 
-import akka.actor.UntypedActor;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
+import com.fixedorgo.transit.Tracking.TrackingApi.GetTrack;
+import com.fixedorgo.transit.Tracking.TrackingApi.Passed;
 import com.fixedorgo.transit.Tracking.TrackingApi.Track;
-import com.google.common.collect.Maps;
-import com.javadocmd.simplelatlng.LatLng;
+import com.fixedorgo.transit.Tracking.TrackingApi.TrackData;
 
 import java.io.Serializable;
-import java.util.Map;
 
-public class Tracking extends UntypedActor {
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.JournalExtension.journalOf;
 
-    private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+public class Tracking extends MeteredActor {
 
-    private final Map<Long, LatLng> movingTrack = Maps.newLinkedHashMap();
+    private final Clock clock = clockOf(getContext().system());
 
-    private final Map<Long, Double> totalPath = Maps.newLinkedHashMap();
+    private final TrackStore movingTrack =
+            new TrackStore(getContext().system().settings().config().getInt("transit.tracking.capacity"));
 
     private double distance = 0;
 
-    @Override
-    public void preStart() throws Exception {
-        totalPath.put(System.currentTimeMillis(), distance); // ???
+    private final Journal journal = journalOf(getContext().system());
+
+    // symbol of the Bus the track is journaled by
+    private final int source;
+
+    /**
+     * @param busId symbol of the Bus, interned by its Shuttle
+     */
+    public Tracking(int busId) {
+        this.source = busId;
     }
 
     @Override
-    public void onReceive(Object message) throws Exception {
-
-        log.debug("Received message [{}]", message);
+    protected void onMessage(Object message) throws Exception {
 
         if (message instanceof Track) {
 
             final Track track = (Track) message;
             final Point point = track.point;
 
-            movingTrack.put(System.currentTimeMillis(), point.getLatLng());
-            totalPath.put(System.currentTimeMillis(), distance += point.getDistance());
+            final long time = clock.currentTimeMillis();
+            movingTrack.append(time, point.getLatLng().getLatitude(),
+                    point.getLatLng().getLongitude(), distance += point.getDistance());
+            journal.track(time, source, point.getLatLng().getLatitude(), point.getLatLng().getLongitude(), distance);
+
+        } else if (message instanceof Passed) {
+
+            // the leg carries its own distance offset, so a dropped leg doesn't shift the following ones
+            final Passed passed = (Passed) message;
+            final MotionPlan plan = passed.plan;
+            final RouteGeometry geometry = plan.getGeometry();
+            distance = passed.distance;
+            for (int i = 0; i < plan.size(); i++) {
+                final int point = plan.pointIndex(i);
+                movingTrack.append(plan.timeAt(i), geometry.latitude(point), geometry.longitude(point),
+                        distance += geometry.distance(point));
+                journal.track(plan.timeAt(i), source, geometry.latitude(point), geometry.longitude(point), distance);
+            }
+
+        } else if (message instanceof GetTrack) {
+
+            final GetTrack getTrack = (GetTrack) message;
+            final int from = movingTrack.indexOf(getTrack.from);
+            final int size = Math.max(movingTrack.indexOf(getTrack.to) - from, 0); // empty if to < from
+            final TrackData data = new TrackData(size);
+            for (int i = 0; i < size; i++) {
+                data.times[i] = movingTrack.time(from + i);
+                data.latitudes[i] = movingTrack.latitude(from + i);
+                data.longitudes[i] = movingTrack.longitude(from + i);
+                data.distances[i] = movingTrack.distance(from + i);
+            }
+            getSender().tell(data, getSelf());
 
         } else {
             unhandled(message);
@@ -61,6 +95,22 @@ public class Tracking extends UntypedActor {
 
     public static class TrackingApi {
 
+        /**
+         * All Points of a leg at once, with the simulation time of passing each of them.
+         */
+        public static class Passed implements Serializable {
+            public final MotionPlan plan;
+            public final long distance; // travelled before the leg, in meters
+
+            public Passed(MotionPlan plan, long distance) {
+                this.plan = plan;
+                this.distance = distance;
+            }
+        }
+
+        /**
+         * Single sample, its distance is added to the distance of the previous sample.
+         */
         public static class Track implements Serializable {
             public final Point point;
 
@@ -69,6 +119,38 @@ public class Tracking extends UntypedActor {
             }
         }
 
+        /**
+         * Request for the samples with simulation time in {@code [from, to)}, answered by {@link TrackData}.
+         */
+        public static class GetTrack implements Serializable {
+            public final long from;
+            public final long to;
+
+            public GetTrack(long from, long to) {
+                this.from = from;
+                this.to = to;
+            }
+        }
+
+        public static class TrackData implements Serializable {
+            public final long[] times;
+            public final double[] latitudes;
+            public final double[] longitudes;
+            public final double[] distances;
+
+            public TrackData(int size) {
+                this.times = new long[size];
+                this.latitudes = new double[size];
+                this.longitudes = new double[size];
+                this.distances = new double[size];
+            }
+
+            @Override
+            public String toString() {
+                return String.format("Track [%s samples]", times.length);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,786 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JSerializer;
+import com.fixedorgo.transit.DepartureData.DepartureApi.DepartureWas;
+import com.fixedorgo.transit.DepartureData.DepartureApi.GetDepartureFor;
+import com.fixedorgo.transit.DepartureData.DepartureApi.GetHeadways;
+import com.fixedorgo.transit.DepartureData.DepartureApi.Headways;
+import com.fixedorgo.transit.DepartureData.DepartureApi.SetDepartureFor;
+import com.fixedorgo.transit.Dispatching.DispatchingApi.GetRouteData;
+import com.fixedorgo.transit.Moving.MovingApi.Load;
+import com.fixedorgo.transit.Moving.MovingApi.MoveTo;
+import com.fixedorgo.transit.Route.RouteApi.RouteData;
+import com.fixedorgo.transit.Station.StationApi.AlightingGroup;
+import com.fixedorgo.transit.Station.StationApi.Arrived;
+import com.fixedorgo.transit.Station.StationApi.Boarding;
+import com.fixedorgo.transit.Station.StationApi.BoardingGroup;
+import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.fixedorgo.transit.Station.StationApi.Stopped;
+import com.fixedorgo.transit.Station.StationApi.ToAlight;
+import com.fixedorgo.transit.TimeScaleController.TimeScaleApi.TimeScale;
+import com.fixedorgo.transit.Tracking.TrackingApi.GetTrack;
+import com.fixedorgo.transit.Tracking.TrackingApi.Passed;
+import com.fixedorgo.transit.Tracking.TrackingApi.Track;
+import com.fixedorgo.transit.Tracking.TrackingApi.TrackData;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.javadocmd.simplelatlng.LatLng;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static com.fixedorgo.transit.PassengerPoolExtension.passengersOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+
+import static com.javadocmd.simplelatlng.util.LatLngConfig.doubleToLong;
+import static com.javadocmd.simplelatlng.util.LatLngConfig.longToDouble;
+
+/**
+ * Compact binary encoding of the simulation messages, registered for them under
+ * {@code akka.actor.serialization-bindings}. Every message is a one byte tag followed by its fields:
+ * <ul>
+ * <li>ints and longs are zigzag varints, so the symbols and the small counts take a byte or two;</li>
+ * <li>coordinates are kept in microdegrees, the precision of {@link LatLng}, and the coordinates of a point list
+ * are written as the deltas from the previous point, which take two or three bytes instead of eight;</li>
+ * <li>cumulative distances and durations and the monotonic times are delta encoded as well;</li>
+ * <li>Station, Route and Bus symbols are written by name, since their numbers depend on the interning order of
+ * each ActorSystem: a name is written once per message and referred to by its index in the message afterwards,
+ * the receiving system interns it into its own {@link Symbols};</li>
+ * <li>Passengers travel by value, with their Stations and Routes by name, and the receiving system allocates them
+ * in its own {@link PassengerPool}; the set of Routes shared by several Passengers is written once as well.</li>
+ * </ul>
+ * The handle of a Passenger is moved by the message and the sender doesn't use it afterwards, but its slot stays
+ * in the pool of the sender, so a node which sends Passengers away releases them itself. Ids of the Passengers are
+ * not kept, the receiving pool gives new ones.
+ * <p>
+ * The encoding is exact: a coordinate array which doesn't fit the microdegrees is written as raw doubles.
+ * The constant messages, such as {@code MoveOn}, are Strings and stay with the default serializer.
+ */
+public class TransitSerializer extends JSerializer {
+
+    /**
+     * Identifier of the serializer in the serialized messages, 0 - 16 are reserved by Akka.
+     */
+    public static final int IDENTIFIER = 0x54524e53;
+
+    private static final byte GET_ROUTE_DATA = 1;
+    private static final byte ROUTE_DATA = 2;
+    private static final byte ROUTE_TABLE = 3;
+    private static final byte LOAD = 4;
+    private static final byte MOVE_TO = 5;
+    private static final byte ARRIVED = 6;
+    private static final byte BOARDING = 7;
+    private static final byte STOPPED = 8;
+    private static final byte BOARDING_GROUP = 9;
+    private static final byte ALIGHTING_GROUP = 10;
+    private static final byte TO_ALIGHT = 11;
+    private static final byte STATION_DATA = 12;
+    private static final byte PASSED = 13;
+    private static final byte TRACK = 14;
+    private static final byte GET_TRACK = 15;
+    private static final byte TRACK_DATA = 16;
+    private static final byte SET_DEPARTURE_FOR = 17;
+    private static final byte GET_DEPARTURE_FOR = 18;
+    private static final byte DEPARTURE_WAS = 19;
+    private static final byte GET_HEADWAYS = 20;
+    private static final byte HEADWAYS = 21;
+    private static final byte TIME_SCALE = 22;
+    private static final byte PASSENGER = 23;
+
+    private static final double MICRODEGREES = 1e6;
+
+    // back references start from one, zero is the empty symbol and the empty set
+    private static final int NEW_NAME = -1;
+
+    private final Symbols symbols;
+
+    private final PassengerPool passengers;
+
+    /**
+     * Constructor used by Akka, the symbols and the Passengers are those of the given system.
+     */
+    public TransitSerializer(ExtendedActorSystem system) {
+        this(symbolsOf(system), passengersOf(system));
+    }
+
+    TransitSerializer(Symbols symbols, PassengerPool passengers) {
+        this.symbols = symbols;
+        this.passengers = passengers;
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public boolean includeManifest() {
+        return false; // the tag tells the type
+    }
+
+    @Override
+    public byte[] toBinary(Object message) {
+        final Output out = new Output(64);
+        if (message instanceof GetRouteData) {
+            final GetRouteData request = (GetRouteData) message;
+            out.writeByte(GET_ROUTE_DATA);
+            writeSymbol(out, request.routeId);
+            out.writeBoolean(request.reverseRoute);
+        } else if (message instanceof RouteData) {
+            out.writeByte(ROUTE_DATA);
+            writeRouteData(out, (RouteData) message);
+        } else if (message instanceof RouteTable) {
+            final RouteTable table = (RouteTable) message;
+            out.writeByte(ROUTE_TABLE);
+            final int[] routes = table.routes();
+            out.writeInt(routes.length);
+            for (int routeId : routes) {
+                final RouteData route = table.routeData(routeId);
+                writeSymbol(out, route.routeId);
+                writeSymbols(out, route.stations);
+                writeSymbol(out, route.reverseRouteId); // the reverse Stations are shared with the reverse Route
+            }
+        } else if (message instanceof Load) {
+            out.writeByte(LOAD);
+            writeGeometry(out, ((Load) message).geometry);
+        } else if (message instanceof MoveTo) {
+            out.writeByte(MOVE_TO);
+            writeLatLng(out, ((MoveTo) message).destination);
+        } else if (message instanceof Arrived) {
+            final Arrived arrived = (Arrived) message;
+            out.writeByte(ARRIVED);
+            writeSymbol(out, arrived.busId);
+            writeSymbol(out, arrived.routeId);
+        } else if (message instanceof Boarding) {
+            final Boarding boarding = (Boarding) message;
+            out.writeByte(BOARDING);
+            writeSymbol(out, boarding.busId);
+            writeSymbol(out, boarding.routeId);
+            out.writeLong(boarding.time);
+            out.writeInt(boarding.load);
+        } else if (message instanceof Stopped) {
+            final Stopped stopped = (Stopped) message;
+            out.writeByte(STOPPED);
+            writeSymbol(out, stopped.busId);
+            writeSymbol(out, stopped.routeId);
+            writePassengers(out, stopped.alighting);
+            out.writeLong(stopped.time);
+            out.writeInt(stopped.load);
+        } else if (message instanceof BoardingGroup) {
+            final BoardingGroup group = (BoardingGroup) message;
+            out.writeByte(BOARDING_GROUP);
+            writeSymbol(out, group.busId);
+            writePassengers(out, group.passengers);
+        } else if (message instanceof AlightingGroup) {
+            out.writeByte(ALIGHTING_GROUP);
+            writePassengers(out, ((AlightingGroup) message).passengers);
+        } else if (message instanceof ToAlight) {
+            out.writeByte(TO_ALIGHT);
+            writePassenger(out, ((ToAlight) message).passenger);
+        } else if (message instanceof StationData) {
+            final StationData data = (StationData) message;
+            out.writeByte(STATION_DATA);
+            out.writeString(data.id);
+            out.writeString(data.name);
+            writeLatLng(out, data.location);
+        } else if (message instanceof Passed) {
+            final Passed passed = (Passed) message;
+            final MotionPlan plan = passed.plan;
+            out.writeByte(PASSED);
+            writeLatLng(out, plan.getStart());
+            out.writeLong(plan.getStartTime());
+            writeGeometry(out, plan.getGeometry());
+            out.writeInt(plan.pointIndex(0));
+            out.writeInt(plan.size());
+            long previous = plan.getStartTime();
+            for (int i = 0; i < plan.size(); i++) {
+                out.writeLong(plan.timeAt(i) - previous);
+                previous = plan.timeAt(i);
+            }
+            out.writeBoolean(plan.isArrived());
+            out.writeLong(passed.distance);
+        } else if (message instanceof Track) {
+            final Point point = ((Track) message).point;
+            out.writeByte(TRACK);
+            out.writeLong(point.getDistance());
+            out.writeLong(point.getDuration());
+            writeLatLng(out, point.getLatLng());
+        } else if (message instanceof GetTrack) {
+            final GetTrack request = (GetTrack) message;
+            out.writeByte(GET_TRACK);
+            out.writeLong(request.from);
+            out.writeLong(request.to - request.from);
+        } else if (message instanceof TrackData) {
+            final TrackData data = (TrackData) message;
+            out.writeByte(TRACK_DATA);
+            out.writeInt(data.times.length);
+            out.writeDeltas(data.times);
+            writeCoordinates(out, data.latitudes);
+            writeCoordinates(out, data.longitudes);
+            out.writeDoubles(data.distances);
+        } else if (message instanceof SetDepartureFor) {
+            final SetDepartureFor departure = (SetDepartureFor) message;
+            out.writeByte(SET_DEPARTURE_FOR);
+            writeSymbol(out, departure.stationId);
+            writeSymbol(out, departure.routeId);
+        } else if (message instanceof GetDepartureFor) {
+            out.writeByte(GET_DEPARTURE_FOR);
+            writeSymbol(out, ((GetDepartureFor) message).stationId);
+        } else if (message instanceof DepartureWas) {
+            final DepartureWas departure = (DepartureWas) message;
+            out.writeByte(DEPARTURE_WAS);
+            writeSymbol(out, departure.stationId);
+            out.writeLong(departure.departureTime);
+        } else if (message instanceof GetHeadways) {
+            final GetHeadways request = (GetHeadways) message;
+            out.writeByte(GET_HEADWAYS);
+            writeSymbol(out, request.stationId);
+            writeSymbol(out, request.routeId);
+            out.writeLong(request.from);
+            out.writeLong(request.to - request.from);
+            out.writeInt(request.percentiles.length);
+            out.writeDoubles(request.percentiles);
+        } else if (message instanceof Headways) {
+            final Headways headways = (Headways) message;
+            out.writeByte(HEADWAYS);
+            writeSymbol(out, headways.stationId);
+            writeSymbol(out, headways.routeId);
+            out.writeLongs(headways.headways);
+            out.writeLongs(headways.percentiles);
+        } else if (message instanceof TimeScale) {
+            final TimeScale timeScale = (TimeScale) message;
+            out.writeByte(TIME_SCALE);
+            out.writeDouble(timeScale.timeScale);
+            out.writeDouble(timeScale.lagMillis);
+            out.writeLong(timeScale.backlog);
+        } else if (message instanceof Passenger) {
+            final Passenger passenger = (Passenger) message;
+            out.writeByte(PASSENGER);
+            writeSymbol(out, passenger.getOrigin());
+            writeSymbol(out, passenger.getDestination());
+            writeRoutes(out, passenger.getSuitableRoutes());
+            out.writeLong(passenger.getArrivalTime());
+        } else {
+            throw new IllegalArgumentException(String.format("Unable to serialize message [%s]",
+                    message == null ? null : message.getClass().getName()));
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+        final Input in = new Input(bytes);
+        final byte tag = in.readByte();
+        switch (tag) {
+            case GET_ROUTE_DATA:
+                return new GetRouteData(readSymbol(in), in.readBoolean());
+            case ROUTE_DATA:
+                return readRouteData(in);
+            case ROUTE_TABLE:
+                return readRouteTable(in);
+            case LOAD:
+                return new Load(readGeometry(in));
+            case MOVE_TO:
+                return new MoveTo(readLatLng(in));
+            case ARRIVED:
+                return new Arrived(readSymbol(in), readSymbol(in));
+            case BOARDING:
+                return new Boarding(readSymbol(in), readSymbol(in), in.readLong(), in.readInt());
+            case STOPPED:
+                return new Stopped(readSymbol(in), readSymbol(in), readPassengers(in), in.readLong(), in.readInt());
+            case BOARDING_GROUP:
+                return new BoardingGroup(readSymbol(in), readPassengers(in));
+            case ALIGHTING_GROUP:
+                return new AlightingGroup(readPassengers(in));
+            case TO_ALIGHT:
+                return new ToAlight(readPassenger(in));
+            case STATION_DATA:
+                return new StationData(in.readString(), in.readString(), readLatLng(in));
+            case PASSED: {
+                final LatLng start = readLatLng(in);
+                final long startTime = in.readLong();
+                final RouteGeometry geometry = readGeometry(in);
+                final int first = in.readInt();
+                final long[] times = new long[in.readInt()];
+                long time = startTime;
+                for (int i = 0; i < times.length; i++)
+                    times[i] = time += in.readLong();
+                final MotionPlan plan = new MotionPlan(start, startTime, geometry, first, times, in.readBoolean());
+                return new Passed(plan, in.readLong());
+            }
+            case TRACK: {
+                final long distance = in.readLong();
+                final long duration = in.readLong();
+                return new Track(new Point(distance, duration, readLatLng(in)));
+            }
+            case GET_TRACK: {
+                final long from = in.readLong();
+                return new GetTrack(from, from + in.readLong());
+            }
+            case TRACK_DATA: {
+                final TrackData data = new TrackData(in.readInt());
+                in.readDeltas(data.times);
+                readCoordinates(in, data.latitudes);
+                readCoordinates(in, data.longitudes);
+                in.readDoubles(data.distances);
+                return data;
+            }
+            case SET_DEPARTURE_FOR:
+                return new SetDepartureFor(readSymbol(in), readSymbol(in));
+            case GET_DEPARTURE_FOR:
+                return new GetDepartureFor(readSymbol(in));
+            case DEPARTURE_WAS:
+                return new DepartureWas(readSymbol(in), in.readLong());
+            case GET_HEADWAYS: {
+                final int stationId = readSymbol(in);
+                final int routeId = readSymbol(in);
+                final long from = in.readLong();
+                final long to = from + in.readLong();
+                final double[] percentiles = new double[in.readInt()];
+                in.readDoubles(percentiles);
+                return new GetHeadways(stationId, routeId, from, to, percentiles);
+            }
+            case HEADWAYS:
+                return new Headways(readSymbol(in), readSymbol(in), in.readLongs(), in.readLongs());
+            case TIME_SCALE:
+                return new TimeScale(in.readDouble(), in.readDouble(), in.readLong());
+            case PASSENGER:
+                return new Passenger(readSymbol(in), readSymbol(in), readRoutes(in), in.readLong());
+            default:
+                throw new IllegalArgumentException(String.format("Unknown message tag [%s]", tag));
+        }
+    }
+
+    private void writeRouteData(Output out, RouteData route) {
+        writeSymbol(out, route.routeId);
+        writeSymbols(out, route.stations);
+        writeSymbol(out, route.reverseRouteId);
+        writeSymbols(out, route.reverseStations);
+    }
+
+    private RouteData readRouteData(Input in) {
+        return new RouteData(readSymbol(in), readSymbols(in), readSymbol(in), readSymbols(in));
+    }
+
+    private RouteTable readRouteTable(Input in) {
+        final int size = in.readInt();
+        final int[] routeIds = new int[size];
+        final int[] reverseRouteIds = new int[size];
+        int[][] stations = new int[0][];
+        for (int i = 0; i < size; i++) {
+            routeIds[i] = readSymbol(in);
+            if (routeIds[i] >= stations.length)
+                stations = Arrays.copyOf(stations, Math.max(stations.length * 2, routeIds[i] + 1));
+            stations[routeIds[i]] = readSymbols(in);
+            reverseRouteIds[i] = readSymbol(in);
+        }
+        final RouteData[] routes = new RouteData[stations.length];
+        for (int i = 0; i < size; i++) {
+            final int reverseRouteId = reverseRouteIds[i];
+            final int[] reverseStations = reverseRouteId >= 0 && reverseRouteId < stations.length ?
+                    stations[reverseRouteId] : null;
+            routes[routeIds[i]] = new RouteData(routeIds[i], stations[routeIds[i]], reverseRouteId, reverseStations);
+        }
+        return new RouteTable(routes, size);
+    }
+
+    /**
+     * Writes the name of the symbol the first time in the message, and its index in the message afterwards.
+     */
+    private void writeSymbol(Output out, int id) {
+        if (id == Symbols.NONE) {
+            out.writeInt(0);
+            return;
+        }
+        final Integer index = out.names.get(id);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        out.names.put(id, out.names.size() + 1);
+        out.writeInt(NEW_NAME);
+        out.writeString(symbols.name(id));
+    }
+
+    /**
+     * @return number of the symbol in this system
+     */
+    private int readSymbol(Input in) {
+        final int index = in.readInt();
+        if (index == NEW_NAME) {
+            final int id = symbols.id(in.readString());
+            in.names.add(id);
+            return id;
+        }
+        if (index == 0)
+            return Symbols.NONE;
+        if (index < 0 || index > in.names.size())
+            throw new IllegalArgumentException(String.format("Unknown name reference [%s]", index));
+        return in.names.get(index - 1);
+    }
+
+    /**
+     * Nullable array of symbols with its length, -1 for {@code null}.
+     */
+    private void writeSymbols(Output out, int[] ids) {
+        if (ids == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ids.length);
+        for (int id : ids)
+            writeSymbol(out, id);
+    }
+
+    private int[] readSymbols(Input in) {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+        final int[] ids = new int[length];
+        for (int i = 0; i < length; i++)
+            ids[i] = readSymbol(in);
+        return ids;
+    }
+
+    /**
+     * Writes the Routes the first time in the message, and their index in the message afterwards: the Passengers
+     * of a Station usually share the same set.
+     */
+    private void writeRoutes(Output out, BitSet routes) {
+        final Integer index = out.routes.get(routes);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        out.routes.put(routes, out.routes.size() + 1);
+        out.writeInt(NEW_NAME);
+        out.writeInt(routes.cardinality());
+        for (int routeId = routes.nextSetBit(0); routeId >= 0; routeId = routes.nextSetBit(routeId + 1))
+            writeSymbol(out, routeId);
+    }
+
+    private BitSet readRoutes(Input in) {
+        final int index = in.readInt();
+        if (index == NEW_NAME) {
+            final BitSet routes = new BitSet();
+            for (int i = in.readInt(); i > 0; i--)
+                routes.set(readSymbol(in));
+            in.routes.add(routes);
+            return routes;
+        }
+        if (index <= 0 || index > in.routes.size())
+            throw new IllegalArgumentException(String.format("Unknown routes reference [%s]", index));
+        return in.routes.get(index - 1);
+    }
+
+    private void writePassenger(Output out, int handle) {
+        writeSymbol(out, passengers.origin(handle));
+        writeSymbol(out, passengers.destination(handle));
+        writeRoutes(out, passengers.routes(handle));
+        out.writeLong(passengers.arrivalTime(handle));
+    }
+
+    /**
+     * @return handle of the Passenger allocated in the pool of this system
+     */
+    private int readPassenger(Input in) {
+        final int origin = readSymbol(in);
+        final int destination = readSymbol(in);
+        final BitSet routes = readRoutes(in);
+        return passengers.allocate(origin, destination, routes, in.readLong());
+    }
+
+    private void writePassengers(Output out, int[] handles) {
+        out.writeInt(handles.length);
+        for (int handle : handles)
+            writePassenger(out, handle);
+    }
+
+    private int[] readPassengers(Input in) {
+        final int[] handles = new int[in.readInt()];
+        for (int i = 0; i < handles.length; i++)
+            handles[i] = readPassenger(in);
+        return handles;
+    }
+
+    private static void writeGeometry(Output out, RouteGeometry geometry) {
+        final int size = geometry.size();
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        final long[] distances = new long[size];
+        final long[] durations = new long[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = geometry.latitude(i);
+            longitudes[i] = geometry.longitude(i);
+            distances[i] = geometry.totalDistance(i);
+            durations[i] = geometry.totalDuration(i);
+        }
+        out.writeInt(size);
+        writeCoordinates(out, latitudes);
+        writeCoordinates(out, longitudes);
+        out.writeDeltas(distances);
+        out.writeDeltas(durations);
+    }
+
+    private static RouteGeometry readGeometry(Input in) {
+        final int size = in.readInt();
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        final long[] distances = new long[size];
+        final long[] durations = new long[size];
+        readCoordinates(in, latitudes);
+        readCoordinates(in, longitudes);
+        in.readDeltas(distances);
+        in.readDeltas(durations);
+        return new RouteGeometry(latitudes, longitudes, distances, durations);
+    }
+
+    private static void writeLatLng(Output out, LatLng latLng) {
+        out.writeLong(latLng.getLatitudeInternal());
+        out.writeLong(latLng.getLongitudeInternal());
+    }
+
+    private static LatLng readLatLng(Input in) {
+        final long latitude = in.readLong();
+        final long longitude = in.readLong();
+        return new LatLng(degrees(latitude), degrees(longitude));
+    }
+
+    /**
+     * @return degrees which {@link LatLng} truncates back to exactly the given microdegrees
+     */
+    private static double degrees(long microdegrees) {
+        double degrees = longToDouble(microdegrees);
+        while (doubleToLong(degrees) < microdegrees)
+            degrees = Math.nextUp(degrees);
+        while (doubleToLong(degrees) > microdegrees)
+            degrees = Math.nextAfter(degrees, Double.NEGATIVE_INFINITY);
+        return degrees;
+    }
+
+    /**
+     * Writes the coordinates as microdegree deltas if all of them are whole microdegrees, as {@link LatLng} gives
+     * them, or as raw doubles otherwise.
+     */
+    private static void writeCoordinates(Output out, double[] coordinates) {
+        boolean microdegrees = true;
+        for (int i = 0; i < coordinates.length && microdegrees; i++)
+            microdegrees = longToDouble(Math.round(coordinates[i] * MICRODEGREES)) == coordinates[i];
+        out.writeBoolean(microdegrees);
+        if (!microdegrees) {
+            out.writeDoubles(coordinates);
+            return;
+        }
+        long previous = 0;
+        for (double coordinate : coordinates) {
+            final long current = Math.round(coordinate * MICRODEGREES);
+            out.writeLong(current - previous);
+            previous = current;
+        }
+    }
+
+    private static void readCoordinates(Input in, double[] coordinates) {
+        if (!in.readBoolean()) {
+            in.readDoubles(coordinates);
+            return;
+        }
+        long current = 0;
+        for (int i = 0; i < coordinates.length; i++)
+            coordinates[i] = longToDouble(current += in.readLong());
+    }
+
+    /**
+     * Growable byte buffer with the varint encoding.
+     */
+    static final class Output {
+
+        // symbol -> index of its name in the message
+        final Map<Integer, Integer> names = Maps.newHashMap();
+
+        // sets of Routes by identity -> index in the message
+        final Map<BitSet, Integer> routes = Maps.newIdentityHashMap();
+
+        private byte[] buffer;
+
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        void writeInt(int value) {
+            writeLong(value);
+        }
+
+        /**
+         * Zigzag varint: 7 bits a byte, small values of either sign take a single byte.
+         */
+        void writeLong(long value) {
+            ensure(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        void writeDouble(double value) {
+            ensure(8);
+            final long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                buffer[size++] = (byte) (bits >>> shift);
+        }
+
+        void writeDoubles(double[] values) {
+            for (double value : values)
+                writeDouble(value);
+        }
+
+        void writeLongs(long[] values) {
+            writeInt(values.length);
+            for (long value : values)
+                writeLong(value);
+        }
+
+        /**
+         * Values as the differences from the previous one, the length is not written.
+         */
+        void writeDeltas(long[] values) {
+            long previous = 0;
+            for (long value : values) {
+                writeLong(value - previous);
+                previous = value;
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            final byte[] bytes = value.getBytes(Charsets.UTF_8);
+            writeInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensure(int length) {
+            if (size + length > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+    }
+
+    static final class Input {
+
+        // symbols of the names in order of the message
+        final List<Integer> names = Lists.newArrayList();
+
+        final List<BitSet> routes = Lists.newArrayList();
+
+        private final byte[] buffer;
+
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            if (position == buffer.length)
+                throw new IllegalArgumentException(String.format("Message is truncated at [%s]", position));
+            return buffer[position++];
+        }
+
+        boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        int readInt() {
+            return (int) readLong();
+        }
+
+        long readLong() {
+            long zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    break;
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++)
+                bits = bits << 8 | (readByte() & 0xFF);
+            return Double.longBitsToDouble(bits);
+        }
+
+        void readDoubles(double[] values) {
+            for (int i = 0; i < values.length; i++)
+                values[i] = readDouble();
+        }
+
+        long[] readLongs() {
+            final long[] values = new long[readInt()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = readLong();
+            return values;
+        }
+
+        void readDeltas(long[] values) {
+            long current = 0;
+            for (int i = 0; i < values.length; i++)
+                values[i] = current += readLong();
+        }
+
+        String readString() {
+            final int length = readInt();
+            if (length < 0)
+                return null;
+            if (length > buffer.length - position)
+                throw new IllegalArgumentException(String.format("Message is truncated at [%s]", position));
+            final String value = new String(buffer, position, length, Charsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+    }
+
+}
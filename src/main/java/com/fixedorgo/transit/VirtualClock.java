@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Math.max;
+
+/**
+ * Discrete-event clock: delayed messages are kept in a priority queue ordered by simulation time
+ * and the clock jumps straight to the next event instead of waiting for it.
+ * <p>
+ * The actors must be processed synchronously on the thread which calls {@link #run(long)}, otherwise
+ * the clock could move forward while they are still busy. The {@code virtual-time.conf} configuration
+ * sets up both the clock mode and the calling thread dispatcher:
+ * <pre>
+ *     ActorSystem system = ActorSystem.create("transit", ConfigFactory.load("virtual-time"));
+ *     // create Dispatching, Station, Route... actors
+ *     ((VirtualClock) clockOf(system)).run(DAYS.toMillis(1));
+ * </pre>
+ */
+public class VirtualClock implements Clock {
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+
+    private long currentTime = 0;
+
+    private long sequence = 0;
+
+    private long processed = 0;
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return currentTime;
+    }
+
+    @Override
+    public synchronized void scheduleOnce(long delay, TimeUnit unit, ActorRef receiver, Object message, ActorRef sender) {
+        final long time = currentTime + unit.toMillis(max(delay, 0));
+        events.add(new Event(time < currentTime ? Long.MAX_VALUE : time, sequence++, receiver, message, sender));
+    }
+
+    /**
+     * Delivers all events due up to the given simulation time, in time order.
+     * Events with the same time are delivered in the order they were scheduled.
+     *
+     * @return number of delivered events
+     */
+    public long run(long until) {
+        long count = 0;
+        Event event;
+        while ((event = next(until)) != null) {
+            event.receiver.tell(event.message, event.sender);
+            count++;
+        }
+        synchronized (this) {
+            currentTime = max(currentTime, until);
+            processed += count;
+        }
+        return count;
+    }
+
+    /**
+     * Delivers the next event only, if any.
+     *
+     * @return {@code false} if there are no pending events
+     */
+    public boolean step() {
+        final Event event = next(Long.MAX_VALUE);
+        if (event == null)
+            return false;
+        event.receiver.tell(event.message, event.sender);
+        synchronized (this) {
+            processed++;
+        }
+        return true;
+    }
+
+    public synchronized int pendingEvents() {
+        return events.size();
+    }
+
+    public synchronized long processedEvents() {
+        return processed;
+    }
+
+    private synchronized Event next(long until) {
+        final Event event = events.peek();
+        if (event == null || event.time > until)
+            return null;
+        currentTime = event.time;
+        return events.poll();
+    }
+
+    private static class Event implements Comparable<Event> {
+
+        final long time;
+        final long sequence;
+        final ActorRef receiver;
+        final Object message;
+        final ActorRef sender;
+
+        Event(long time, long sequence, ActorRef receiver, Object message, ActorRef sender) {
+            this.time = time;
+            this.sequence = sequence;
+            this.receiver = receiver;
+            this.message = message;
+            this.sender = sender;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time)
+                return time < other.time ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+    }
+
+}
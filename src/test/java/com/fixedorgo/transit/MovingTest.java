@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.testkit.JavaTestKit;
+import com.fixedorgo.transit.Bus.BusApi.Locate;
+import com.fixedorgo.transit.Moving.MovingApi.Load;
+import com.fixedorgo.transit.Moving.MovingApi.MoveTo;
+import com.fixedorgo.transit.Tracking.TrackingApi.GetTrack;
+import com.fixedorgo.transit.Tracking.TrackingApi.TrackData;
+import com.google.common.collect.Lists;
+import com.javadocmd.simplelatlng.LatLng;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.duration.Duration;
+
+import java.util.List;
+
+import static com.fixedorgo.transit.Bus.BusApi.WeAreHere;
+import static com.fixedorgo.transit.ClockExtension.clockOf;
+import static com.fixedorgo.transit.SymbolsExtension.symbolsOf;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MovingTest {
+
+    private ActorSystem system;
+
+    @Before
+    public void setUp() {
+        SystemClock.setTimeScale(100);
+        system = ActorSystem.create("MovingTest", ConfigFactory.parseString(
+                "transit.moving.sample-interval = 1s\n" +
+                "transit.metrics.jmx = off").withFallback(ConfigFactory.load()));
+    }
+
+    @After
+    public void tearDown() {
+        system.shutdown();
+        system.awaitTermination();
+        SystemClock.setTimeScale(1);
+    }
+
+    @Test
+    public void legIsReachedAtItsEndTimeAfterTimeScaleIsLowered() throws Exception {
+        // 15 Points 100 m and 1 s apart, the first leg ends at the 10th Point
+        final List<Point> points = Lists.newArrayList();
+        for (int i = 0; i < 15; i++)
+            points.add(new Point(100, 1, new LatLng(53.9 + i * 0.0009, 27.55)));
+
+        final JavaTestKit probe = new JavaTestKit(system);
+        final ActorRef bus = system.actorOf(Props.create(TestBus.class, probe.getRef()), "bus");
+        bus.tell(new Load(points), ActorRef.noSender());
+        bus.tell(new MoveTo(points.get(9).getLatLng()), ActorRef.noSender());
+
+        // the arrival timer is set for about 100 ms of wall time, lower the time scale at the first sample
+        probe.expectMsgClass(Duration.create(5, SECONDS), Locate.class);
+        SystemClock.setTimeScale(20);
+
+        assertThat(receive(probe)).isEqualTo(WeAreHere);
+        assertThat(clockOf(system).currentTimeMillis()).isGreaterThanOrEqualTo(9000); // speed factor up to 1.1
+
+        bus.tell(new MoveTo(points.get(14).getLatLng()), ActorRef.noSender());
+        assertThat(receive(probe)).isEqualTo(WeAreHere);
+
+        system.actorSelection("/user/bus/moving/tracking").tell(new GetTrack(0, Long.MAX_VALUE), probe.getRef());
+        final Object message = receive(probe);
+        assertThat(message).isInstanceOf(TrackData.class);
+        final TrackData track = (TrackData) message;
+        assertThat(track.times).hasSize(15).isSorted();
+        assertThat(track.distances[14]).isEqualTo(1500);
+    }
+
+    // skips the position samples, a sample timer may also come after the arrival
+    private static Object receive(JavaTestKit probe) {
+        Object message;
+        do {
+            message = probe.receiveOne(Duration.create(5, SECONDS));
+        } while (message instanceof Locate);
+        return message;
+    }
+
+    /**
+     * Parent of the Moving actor, it passes the positions and arrivals on to the probe.
+     */
+    public static class TestBus extends UntypedActor {
+
+        private final ActorRef probe;
+
+        private final ActorRef moving;
+
+        public TestBus(ActorRef probe) {
+            this.probe = probe;
+            this.moving = getContext().actorOf(Props.create(Moving.class, symbolsOf(getContext().system()).id("bus")),
+                    "moving");
+        }
+
+        @Override
+        public void onReceive(Object message) throws Exception {
+            if (message.equals(WeAreHere) || message instanceof Locate)
+                probe.tell(message, getSelf());
+            else if (!getSender().equals(moving))
+                moving.tell(message, getSelf());
+        }
+
+    }
+
+}
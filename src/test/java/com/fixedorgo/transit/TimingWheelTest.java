@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.JavaTestKit;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.duration.Duration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+
+/**
+ * The wheel is driven by {@link TimingWheel#process()} with a manual ticker and a tick of one millisecond,
+ * each timer carries the tick it is due on.
+ */
+public class TimingWheelTest {
+
+    private static final long TICK = MILLISECONDS.toNanos(1);
+
+    private ActorSystem system;
+
+    private JavaTestKit probe;
+
+    private ManualTicker ticker;
+
+    private TimingWheel wheel;
+
+    @Before
+    public void setUp() {
+        system = ActorSystem.create("TimingWheelTest", ConfigFactory.parseString("transit.metrics.jmx = off")
+                .withFallback(ConfigFactory.load()));
+        probe = new JavaTestKit(system);
+        ticker = new ManualTicker();
+        wheel = new TimingWheel(1, MILLISECONDS, ticker, null);
+    }
+
+    @After
+    public void tearDown() {
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @Test
+    public void timerAtEveryLevelBoundaryFiresOnItsTick() {
+        assertFiresOnTime(0);
+    }
+
+    @Test
+    public void timerAtEveryLevelBoundaryFiresOnItsTickFromUnalignedTick() {
+        moveTo(12345);
+        assertThat(wheel.process()).isEqualTo(Long.MAX_VALUE);
+        assertFiresOnTime(12345);
+    }
+
+    @Test
+    public void wheelSleepsUntilTheNextOccupiedSlot() {
+        assertThat(wheel.process()).isEqualTo(Long.MAX_VALUE);
+
+        schedule(10);
+        schedule(300);
+        assertThat(wheel.process()).isEqualTo(10);
+
+        moveTo(10);
+        assertThat(wheel.process()).isEqualTo(256); // the second wheel turns before the timer is due
+        assertThat(received()).containsExactly(10L);
+
+        moveTo(256);
+        assertThat(wheel.process()).isEqualTo(300);
+
+        moveTo(300);
+        assertThat(wheel.process()).isEqualTo(Long.MAX_VALUE);
+        assertThat(received()).containsExactly(300L);
+    }
+
+    @Test
+    public void cascadedTimersFireInOrderOfTheirTicks() {
+        final Random random = new Random(42);
+        final List<Long> ticks = Lists.newArrayList();
+        for (int i = 0; i < 5000; i++) {
+            final long tick = 1 + random.nextInt(200000);
+            ticks.add(tick);
+            schedule(tick);
+        }
+        Collections.sort(ticks);
+
+        final List<Long> fired = Lists.newArrayList();
+        long now = 0;
+        while (fired.size() < ticks.size()) {
+            final long previous = now;
+            now += 1 + random.nextInt(1000); // several ticks at once, as after a late wake up
+            moveTo(now);
+            wheel.process();
+            for (long tick : received()) {
+                assertThat(tick).isGreaterThan(previous).isLessThanOrEqualTo(now);
+                fired.add(tick);
+            }
+        }
+        assertThat(fired).isEqualTo(ticks);
+    }
+
+    @Test
+    public void latenessIsCollected() {
+        schedule(5);
+        schedule(8);
+        moveTo(7.5);
+        wheel.process();
+        moveTo(8);
+        wheel.process();
+        assertThat(received()).containsExactly(5L, 8L);
+
+        final RunningStatistics lateness = wheel.takeLateness();
+        assertThat(lateness.getCount()).isEqualTo(2);
+        assertThat(lateness.getMean()).isEqualTo(1.25);
+        assertThat(lateness.getMax()).isEqualTo(2.5);
+        assertThat(wheel.takeLateness().getCount()).isZero();
+
+        final Histogram histogram = wheel.getLatenessHistogram();
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat((double) histogram.getMax()).isEqualTo(2.5 * TICK, offset(0.01 * TICK));
+    }
+
+    @Test
+    public void wheelThreadWakesUpForAnEarlierTimer() {
+        final TimingWheel wheel = new TimingWheel(1, MILLISECONDS, "test-timing-wheel");
+        try {
+            wheel.schedule(1, SECONDS, probe.getRef(), "late", ActorRef.noSender());
+            wheel.schedule(20, MILLISECONDS, probe.getRef(), "early", ActorRef.noSender());
+            final long start = System.nanoTime();
+            probe.expectMsgEquals(Duration.create(500, MILLISECONDS), "early");
+            assertThat(System.nanoTime() - start).isLessThan(MILLISECONDS.toNanos(500));
+            probe.expectMsgEquals(Duration.create(3, SECONDS), "late");
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    /**
+     * Schedules timers right before, at and after the start of every wheel level, relative to the current tick.
+     */
+    private void assertFiresOnTime(long start) {
+        final long[] delays = {1, 2, 255, 256, 257, 65535, 65536, 65537, (1 << 24) - 1, 1 << 24, (1 << 24) + 1};
+        for (long delay : delays)
+            schedule(start + delay);
+        assertThat(wheel.process()).isEqualTo(start + 1);
+        for (long delay : delays) {
+            moveTo(start + delay - 1);
+            wheel.process();
+            assertThat(received()).as("before " + delay).isEmpty();
+            moveTo(start + delay);
+            wheel.process();
+            assertThat(received()).as("at " + delay).containsExactly(start + delay);
+        }
+        assertThat(wheel.process()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    /**
+     * Schedules a timer due on the given tick from now.
+     */
+    private void schedule(long tick) {
+        wheel.schedule(tick * TICK - ticker.nanos, NANOSECONDS, probe.getRef(), tick,
+                ActorRef.noSender());
+    }
+
+    private void moveTo(double tick) {
+        ticker.nanos = Math.round(tick * TICK);
+    }
+
+    private List<Long> received() {
+        final List<Long> ticks = Lists.newArrayList();
+        while (probe.msgAvailable())
+            ticks.add((Long) probe.receiveOne(Duration.Zero()));
+        return ticks;
+    }
+
+    private static final class ManualTicker extends Ticker {
+
+        long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2015 Timur Zagorsky
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fixedorgo.transit;
+
+import com.fixedorgo.transit.DepartureData.DepartureApi.DepartureWas;
+import com.fixedorgo.transit.DepartureData.DepartureApi.GetDepartureFor;
+import com.fixedorgo.transit.DepartureData.DepartureApi.GetHeadways;
+import com.fixedorgo.transit.DepartureData.DepartureApi.Headways;
+import com.fixedorgo.transit.DepartureData.DepartureApi.SetDepartureFor;
+import com.fixedorgo.transit.Dispatching.DispatchingApi.GetRouteData;
+import com.fixedorgo.transit.Moving.MovingApi.Load;
+import com.fixedorgo.transit.Moving.MovingApi.MoveTo;
+import com.fixedorgo.transit.Route.RouteApi.RouteData;
+import com.fixedorgo.transit.Station.StationApi.AlightingGroup;
+import com.fixedorgo.transit.Station.StationApi.Arrived;
+import com.fixedorgo.transit.Station.StationApi.Boarding;
+import com.fixedorgo.transit.Station.StationApi.BoardingGroup;
+import com.fixedorgo.transit.Station.StationApi.StationData;
+import com.fixedorgo.transit.Station.StationApi.Stopped;
+import com.fixedorgo.transit.Station.StationApi.ToAlight;
+import com.fixedorgo.transit.TimeScaleController.TimeScaleApi.TimeScale;
+import com.fixedorgo.transit.Tracking.TrackingApi.GetTrack;
+import com.fixedorgo.transit.Tracking.TrackingApi.Passed;
+import com.fixedorgo.transit.Tracking.TrackingApi.Track;
+import com.fixedorgo.transit.Tracking.TrackingApi.TrackData;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.javadocmd.simplelatlng.LatLng;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Messages go from the sender to the receiver system, whose Symbols are interned in a different order
+ * and whose PassengerPool is a different one.
+ */
+public class TransitSerializerTest {
+
+    private Symbols senderSymbols;
+
+    private PassengerPool senderPool;
+
+    private TransitSerializer sender;
+
+    private Symbols receiverSymbols;
+
+    private PassengerPool receiverPool;
+
+    private TransitSerializer receiver;
+
+    @Before
+    public void setUp() {
+        senderSymbols = new Symbols();
+        senderPool = new PassengerPool();
+        sender = new TransitSerializer(senderSymbols, senderPool);
+
+        receiverSymbols = new Symbols();
+        // Stations are numbered in the reverse order, Routes keep their relative order
+        for (String name : new String[]{"unrelated", "station-c", "station-b", "station-a"})
+            receiverSymbols.id(name);
+        receiverPool = new PassengerPool();
+        receiver = new TransitSerializer(receiverSymbols, receiverPool);
+    }
+
+    @Test
+    public void everyMessageIsReadBackToTheSameEncoding() {
+        final Set<Integer> tags = Sets.newTreeSet();
+        for (Object message : messages()) {
+            final byte[] bytes = sender.toBinary(message);
+            tags.add((int) bytes[0]);
+            final Object result = receiver.fromBinary(bytes);
+            assertThat(result).isInstanceOf(message.getClass());
+            // names, not numbers, are written, so the receiver writes the same bytes back
+            assertThat(receiver.toBinary(result)).as(message.getClass().getSimpleName()).isEqualTo(bytes);
+        }
+        final Set<Integer> expected = Sets.newTreeSet();
+        for (int tag = 1; tag <= 23; tag++)
+            expected.add(tag);
+        assertThat(tags).isEqualTo(expected);
+    }
+
+    @Test
+    public void symbolsAreTranslatedByName() {
+        final Arrived arrived = (Arrived) receiver.fromBinary(sender.toBinary(
+                new Arrived(senderSymbols.id("bus-1"), senderSymbols.id("route-1"))));
+        assertThat(receiverSymbols.name(arrived.busId)).isEqualTo("bus-1");
+        assertThat(receiverSymbols.name(arrived.routeId)).isEqualTo("route-1");
+
+        final GetHeadways headways = (GetHeadways) receiver.fromBinary(sender.toBinary(
+                new GetHeadways(senderSymbols.id("station-a"), senderSymbols.id("route-1"), 1000, 5000, 50, 99.9)));
+        assertThat(headways.stationId).isEqualTo(receiverSymbols.id("station-a"))
+                .isNotEqualTo(senderSymbols.id("station-a"));
+        assertThat(headways.routeId).isEqualTo(arrived.routeId);
+        assertThat(headways.from).isEqualTo(1000);
+        assertThat(headways.to).isEqualTo(5000);
+        assertThat(headways.percentiles).containsExactly(50, 99.9);
+    }
+
+    @Test
+    public void repeatedNameIsReferredToByIndex() {
+        final int a = senderSymbols.id("station-a");
+        final int b = senderSymbols.id("station-b");
+        final byte[] same = sender.toBinary(new SetDepartureFor(a, a));
+        assertThat(same.length).isLessThan(sender.toBinary(new SetDepartureFor(a, b)).length);
+
+        final SetDepartureFor departure = (SetDepartureFor) receiver.fromBinary(same);
+        assertThat(departure.stationId).isEqualTo(receiverSymbols.id("station-a"));
+        assertThat(departure.routeId).isEqualTo(departure.stationId);
+
+        final RouteData loop = (RouteData) receiver.fromBinary(sender.toBinary(
+                new RouteData(senderSymbols.id("loop"), new int[]{a, b, a, b, a})));
+        assertThat(names(loop.stations)).containsExactly("station-a", "station-b", "station-a", "station-b",
+                "station-a");
+    }
+
+    @Test
+    public void emptySymbolStaysEmpty() {
+        final Boarding boarding = (Boarding) receiver.fromBinary(sender.toBinary(
+                new Boarding(senderSymbols.id("route-1"), 60000, 12)));
+        assertThat(boarding.busId).isEqualTo(Symbols.NONE);
+        assertThat(receiverSymbols.name(boarding.routeId)).isEqualTo("route-1");
+        assertThat(boarding.time).isEqualTo(60000);
+        assertThat(boarding.load).isEqualTo(12);
+
+        final RouteData route = (RouteData) receiver.fromBinary(sender.toBinary(
+                new RouteData(senderSymbols.id("route-1"), new int[]{senderSymbols.id("station-a")})));
+        assertThat(route.reverseRouteId).isEqualTo(Symbols.NONE);
+        assertThat(route.reverseStations).isNull();
+    }
+
+    @Test
+    public void passengersKeepSharingTheirRoutes() {
+        final BitSet shared = routes("route-1", "route-2");
+        final BitSet own = routes("route-3");
+        final int origin = senderSymbols.id("station-a");
+        final int[] handles = {
+                senderPool.allocate(origin, senderSymbols.id("station-b"), shared, 1000),
+                senderPool.allocate(origin, senderSymbols.id("station-c"), shared, 2000),
+                senderPool.allocate(origin, Symbols.NONE, own, 3000)
+        };
+        final byte[] bytes = sender.toBinary(new BoardingGroup(senderSymbols.id("bus-1"), handles));
+        final BitSet copy = (BitSet) shared.clone();
+        assertThat(bytes.length).isLessThan(sender.toBinary(new BoardingGroup(senderSymbols.id("bus-1"), new int[]{
+                senderPool.allocate(origin, senderSymbols.id("station-b"), shared, 1000),
+                senderPool.allocate(origin, senderSymbols.id("station-c"), copy, 2000),
+                senderPool.allocate(origin, Symbols.NONE, own, 3000)})).length);
+
+        final BoardingGroup group = (BoardingGroup) receiver.fromBinary(bytes);
+        assertThat(receiverSymbols.name(group.busId)).isEqualTo("bus-1");
+        final int[] passengers = group.passengers;
+        assertThat(passengers).hasSize(3);
+        assertThat(receiverPool.routes(passengers[0])).isSameAs(receiverPool.routes(passengers[1]))
+                .isNotSameAs(receiverPool.routes(passengers[2]));
+        assertThat(routeNames(receiverPool.routes(passengers[0]))).containsExactly("route-1", "route-2");
+        assertThat(routeNames(receiverPool.routes(passengers[2]))).containsExactly("route-3");
+        assertThat(receiverSymbols.name(receiverPool.origin(passengers[1]))).isEqualTo("station-a");
+        assertThat(receiverSymbols.name(receiverPool.destination(passengers[1]))).isEqualTo("station-c");
+        assertThat(receiverPool.destination(passengers[2])).isEqualTo(Symbols.NONE);
+        assertThat(receiverPool.arrivalTime(passengers[2])).isEqualTo(3000);
+    }
+
+    @Test
+    public void coordinatesOutsideMicrodegreesAreWrittenAsDoubles() {
+        final TrackData microdegrees = trackData(53.900001, 27.550002);
+        final TrackData doubles = trackData(53.9000001234, 27.5500005678);
+        final byte[] bytes = sender.toBinary(doubles);
+        assertThat(bytes.length).isGreaterThan(sender.toBinary(microdegrees).length);
+
+        final TrackData data = (TrackData) receiver.fromBinary(bytes);
+        assertThat(data.times).isEqualTo(doubles.times);
+        assertThat(data.latitudes).isEqualTo(doubles.latitudes);
+        assertThat(data.longitudes).isEqualTo(doubles.longitudes);
+        assertThat(data.distances).isEqualTo(doubles.distances);
+
+        final RouteGeometry geometry = new RouteGeometry(doubles.latitudes, doubles.longitudes,
+                new long[]{100, 250, 250}, new long[]{10, 25, 40});
+        final RouteGeometry result = ((Load) receiver.fromBinary(sender.toBinary(new Load(geometry)))).geometry;
+        assertThat(result.size()).isEqualTo(3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(result.latitude(i)).isEqualTo(geometry.latitude(i));
+            assertThat(result.longitude(i)).isEqualTo(geometry.longitude(i));
+            assertThat(result.totalDistance(i)).isEqualTo(geometry.totalDistance(i));
+            assertThat(result.totalDuration(i)).isEqualTo(geometry.totalDuration(i));
+        }
+    }
+
+    @Test
+    public void routeTableKeepsReverseRoutes() {
+        final RouteTable table = (RouteTable) receiver.fromBinary(sender.toBinary(routeTable()));
+        assertThat(table.routes()).hasSize(3);
+
+        final int forward = receiverSymbols.id("route-1");
+        final int reverse = receiverSymbols.id("route-1-back");
+        assertThat(names(table.stations(forward))).containsExactly("station-a", "station-b", "station-c");
+        assertThat(table.reverseRoute(forward)).isEqualTo(reverse);
+        assertThat(table.reverseRoute(reverse)).isEqualTo(forward);
+        assertThat(table.routeData(forward).reverseStations).isSameAs(table.stations(reverse));
+        assertThat(names(table.stations(reverse))).containsExactly("station-c", "station-b", "station-a");
+
+        final int loop = receiverSymbols.id("loop");
+        assertThat(names(table.stations(loop))).containsExactly("station-b", "station-a", "station-b");
+        assertThat(table.reverseRoute(loop)).isEqualTo(Symbols.NONE);
+        assertThat(table.routeData(loop).reverseStations).isNull();
+    }
+
+    @Test
+    public void truncatedMessageIsRejected() {
+        for (Object message : messages()) {
+            final byte[] bytes = sender.toBinary(message);
+            for (int length = 0; length < bytes.length; length++) {
+                try {
+                    receiver.fromBinary(Arrays.copyOf(bytes, length));
+                    fail(String.format("%s truncated to %s bytes was read", message.getClass().getSimpleName(),
+                            length));
+                } catch (IllegalArgumentException e) {
+                    assertThat(e).hasMessageStartingWith("Message is truncated at");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unknownContentIsRejected() {
+        try {
+            receiver.fromBinary(new byte[]{99});
+            fail("Unknown tag was read");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Unknown message tag [99]");
+        }
+        try {
+            receiver.fromBinary(new byte[]{6, 10, 0}); // Arrived with the Bus name 5 that was never written
+            fail("Unknown name reference was read");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Unknown name reference [5]");
+        }
+        try {
+            sender.toBinary(new Object());
+            fail("Unknown message was written");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Unable to serialize message [java.lang.Object]");
+        }
+    }
+
+    /**
+     * A message of every tag.
+     */
+    private List<Object> messages() {
+        final int route = senderSymbols.id("route-1");
+        final int station = senderSymbols.id("station-a");
+        final int bus = senderSymbols.id("bus-1");
+        final BitSet routes = routes("route-1", "route-2");
+        final int first = senderPool.allocate(station, senderSymbols.id("station-c"), routes, 1000);
+        final int second = senderPool.allocate(station, Symbols.NONE, routes, 2000);
+
+        final RouteGeometry geometry = geometry();
+        final LatLng location = new LatLng(53.9, 27.55);
+        return ImmutableList.of(
+                new GetRouteData(route, true),
+                routeTable().routeData(route),
+                routeTable(),
+                new Load(geometry),
+                new MoveTo(location),
+                new Arrived(bus, route),
+                new Boarding(bus, route, 60000, 30),
+                new Stopped(bus, route, new int[]{first, second}, 61000, 28),
+                new BoardingGroup(bus, new int[]{first, second}),
+                new AlightingGroup(new int[]{second}),
+                new ToAlight(first),
+                new StationData("station-a", "Station A", location),
+                new Passed(new MotionPlan(location, 60000, geometry, 1, new long[]{61000, 62500, 64000}, true), 250),
+                new Track(new Point(12, 3, location)),
+                new GetTrack(60000, 120000),
+                trackData(53.900001, 27.550002),
+                new SetDepartureFor(station, route),
+                new GetDepartureFor(station),
+                new DepartureWas(station, 61000),
+                new GetHeadways(station, route, 0, 3600000, 50, 95),
+                new Headways(station, route, new long[]{300000, 360000, 420000}, new long[]{360000, 420000}),
+                new TimeScale(12.5, 3.25, 42),
+                new Passenger(station, senderSymbols.id("station-b"), routes, 5000));
+    }
+
+    private RouteTable routeTable() {
+        return RouteTable.create(
+                ImmutableMap.<String, List<String>>of(
+                        "route-1", ImmutableList.of("station-a", "station-b", "station-c"),
+                        "route-1-back", ImmutableList.of("station-c", "station-b", "station-a"),
+                        "loop", ImmutableList.of("station-b", "station-a", "station-b")),
+                ImmutableMap.of("route-1", "route-1-back", "route-1-back", "route-1"),
+                senderSymbols);
+    }
+
+    private static RouteGeometry geometry() {
+        final List<Point> points = Lists.newArrayList();
+        for (int i = 0; i < 5; i++)
+            points.add(new Point(100 + i, 10 + i, new LatLng(53.9 + i * 0.001, 27.55 - i * 0.002)));
+        return new RouteGeometry(points);
+    }
+
+    private static TrackData trackData(double latitude, double longitude) {
+        final TrackData data = new TrackData(3);
+        for (int i = 0; i < 3; i++) {
+            data.times[i] = 60000 + i * 1500;
+            data.latitudes[i] = latitude + i * 0.001;
+            data.longitudes[i] = longitude - i * 0.001;
+            data.distances[i] = 100.5 * i;
+        }
+        return data;
+    }
+
+    private BitSet routes(String... names) {
+        final BitSet routes = new BitSet();
+        for (String name : names)
+            routes.set(senderSymbols.id(name));
+        return routes;
+    }
+
+    private List<String> routeNames(BitSet routes) {
+        final List<String> names = Lists.newArrayList();
+        for (int id = routes.nextSetBit(0); id >= 0; id = routes.nextSetBit(id + 1))
+            names.add(receiverSymbols.name(id));
+        return names;
+    }
+
+    private List<String> names(int[] ids) {
+        final List<String> names = Lists.newArrayList();
+        for (int id : ids)
+            names.add(receiverSymbols.name(id));
+        return names;
+    }
+
+}